@@ -0,0 +1,402 @@
+package unitard;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads Stuff into plain Java objects and writes them back, without per-field path lookups.
+ *
+ * A binder inspects its target class once, resolving a constructor and a getter/setter
+ * MethodHandle for every instance field.  Reading then walks the Stuff a single time, filling
+ * fields directly.  Nested objects, enums and List fields with a declared element type are bound
+ * recursively, and Map fields get a copy of the map.  A number is converted to the field's
+ * numeric type only if it keeps its exact value.
+ *
+ * Every field is required; a missing key, a null for a primitive field, or a value of the wrong
+ * type produces the corresponding Hopefully failure, at the path where it was found.
+ *
+ * <pre>
+ * Hopefully&lt;Result&gt; result = Binder.of(Result.class).read(stuff.get("tieredResults", 0, "results", 0));
+ * </pre>
+ */
+public final class Binder<T> {
+
+    private static final Object MISSING = new Object();
+
+    private static final Map<Class<?>, Binder<?>> BINDERS = new ConcurrentHashMap<>();
+
+    private static final Map<Class<?>, Class<?>> BOXES = new HashMap<>();
+
+    static {
+        BOXES.put(boolean.class, Boolean.class);
+        BOXES.put(byte.class, Byte.class);
+        BOXES.put(short.class, Short.class);
+        BOXES.put(char.class, Character.class);
+        BOXES.put(int.class, Integer.class);
+        BOXES.put(long.class, Long.class);
+        BOXES.put(float.class, Float.class);
+        BOXES.put(double.class, Double.class);
+    }
+
+    private final Class<T> type;
+    private final MethodHandle constructor;
+    private final Property[] properties;
+
+    public static <T> Binder<T> of(Class<T> type) {
+        @SuppressWarnings("unchecked")
+        Binder<T> binder = (Binder<T>) BINDERS.get(type);
+        if (binder == null) {
+            binder = new Binder<>(type);
+            BINDERS.putIfAbsent(type, binder);
+        }
+        return binder;
+    }
+
+    private Binder(Class<T> type) {
+        if (!isBindable(type)) {
+            throw new IllegalArgumentException("Cannot bind to " + type.getName());
+        }
+        this.type = type;
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            Constructor<T> ctor = type.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            this.constructor = lookup.unreflectConstructor(ctor).asType(MethodType.methodType(Object.class));
+
+            List<Property> props = new ArrayList<>();
+            for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+                for (Field f : c.getDeclaredFields()) {
+                    int mods = f.getModifiers();
+                    if (!Modifier.isStatic(mods) && !Modifier.isTransient(mods) && !f.isSynthetic()) {
+                        f.setAccessible(true);
+                        props.add(new Property(f, lookup));
+                    }
+                }
+            }
+            this.properties = props.toArray(new Property[0]);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot bind to " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Reads a map-shaped Stuff (or java.util.Map) into a new instance.
+     */
+    public Hopefully<T> read(Object source) {
+        return read(source, Path.EMPTY);
+    }
+
+    /**
+     * Binds the result of a lookup, keeping its path in any failures.
+     */
+    @SuppressWarnings("unchecked")
+    public Hopefully<T> read(Hopefully<?> source) {
+        return source.mapOrElse(s -> read(s, source.getPath()), () -> (Hopefully<T>) source);
+    }
+
+    /**
+     * Writes an instance out as a map-shaped Stuff.
+     */
+    public Stuff write(T value) {
+        Object[] keysAndValues = new Object[properties.length * 2];
+        for (int i = 0; i < properties.length; i++) {
+            Property p = properties[i];
+            keysAndValues[2 * i] = p.name;
+            keysAndValues[2 * i + 1] = p.converter.write(invokeGetter(p, value));
+        }
+        return Stuff.mapOf(keysAndValues);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Hopefully<T> read(Object source, Path path) {
+        if (!Stuff.isMapLike(source)) {
+            return wrongType(source, Map.class, path);
+        }
+
+        Object target = newInstance();
+        for (Property p : properties) {
+            Object raw = Stuff.getRawFrom(source, p.name, MISSING);
+            if (raw == MISSING) {
+                return Hopefully.<T>missing().withPath(path.dot(p.name));
+            }
+            Hopefully<Object> value = p.converter.read(raw, path, p.name);
+            if (!value.isActualValue() && !(value.isNull() && !p.primitive)) {
+                return (Hopefully<T>) (Hopefully<?>) value;
+            }
+            invokeSetter(p, target, value.getOrElse(() -> null));
+        }
+        return Hopefully.notNull((T) target).withPath(path);
+    }
+
+    private Object newInstance() {
+        try {
+            return constructor.invokeExact();
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not construct " + type.getName(), t);
+        }
+    }
+
+    private static void invokeSetter(Property p, Object target, Object value) {
+        try {
+            p.setter.invokeExact(target, value);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not set " + p.name, t);
+        }
+    }
+
+    private static Object invokeGetter(Property p, Object target) {
+        try {
+            return p.getter.invokeExact(target);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not get " + p.name, t);
+        }
+    }
+
+    private static <A> Hopefully<A> wrongType(Object found, Class<?> expected, Path path) {
+        return Hopefully.<A>wrongType(found.getClass(), expected).withPath(path);
+    }
+
+    private static boolean isBindable(Class<?> c) {
+        return !c.isPrimitive() && !c.isArray() && !c.isInterface() && !c.isEnum()
+                && !Modifier.isAbstract(c.getModifiers())
+                && !c.getName().startsWith("java.")
+                && !Stuff.class.isAssignableFrom(c);
+    }
+
+    private static final class Property {
+        final String name;
+        final boolean primitive;
+        final MethodHandle getter, setter;
+        final Converter converter;
+
+        Property(Field field, MethodHandles.Lookup lookup) throws IllegalAccessException {
+            this.name = field.getName();
+            this.primitive = field.getType().isPrimitive();
+            this.getter = lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+            this.setter = lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, Object.class));
+            this.converter = converterFor(field.getGenericType());
+        }
+    }
+
+    /**
+     * Converts one field's value between its Stuff and Java representations.
+     */
+    private interface Converter {
+        Hopefully<Object> read(Object raw, Path parent, Object key);
+
+        Object write(Object value);
+    }
+
+    private static Converter converterFor(Type genericType) {
+        Class<?> raw = genericType instanceof ParameterizedType
+                ? (Class<?>) ((ParameterizedType) genericType).getRawType()
+                : genericType instanceof Class ? (Class<?>) genericType : Object.class;
+
+        if (raw == List.class && genericType instanceof ParameterizedType) {
+            Type elementType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+            if (elementType instanceof Class || elementType instanceof ParameterizedType) {
+                return new ListConverter(converterFor(elementType));
+            }
+        }
+        if (raw == Map.class) {
+            return new MapConverter();
+        }
+        if (isBindable(raw)) {
+            return new NestedConverter(raw);
+        }
+        return new LeafConverter(BOXES.getOrDefault(raw, raw));
+    }
+
+    private static final class LeafConverter implements Converter {
+        private final Class<?> type;
+
+        LeafConverter(Class<?> type) {
+            this.type = type;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public Hopefully<Object> read(Object raw, Path parent, Object key) {
+            if (raw == null) {
+                return Hopefully.nullValue().withPath(parent.dot(key));
+            } else if (type.isInstance(raw)) {
+                return Hopefully.notNull(raw);
+            } else if (raw instanceof Number && Number.class.isAssignableFrom(type)) {
+                Object n = convertNumber((Number) raw, type);
+                if (n != null) {
+                    return Hopefully.notNull(n);
+                }
+            } else if (type.isEnum() && raw instanceof String) {
+                try {
+                    return Hopefully.notNull(Enum.valueOf((Class<Enum>) type, (String) raw));
+                } catch (IllegalArgumentException e) {
+                    // Falls through to WrongType
+                }
+            } else if (type == Stuff.class && (Stuff.isMapLike(raw) || Stuff.isListLike(raw))) {
+                return Hopefully.notNull(raw).asStuff().map(s -> (Object) s);
+            }
+            return wrongType(raw, type, parent.dot(key));
+        }
+
+        public Object write(Object value) {
+            return value instanceof Enum ? ((Enum<?>) value).name() : value;
+        }
+
+        /**
+         * Converts a number to another numeric type, or returns null if it would not hold the
+         * same value there.
+         */
+        private static Object convertNumber(Number n, Class<?> type) {
+            if (type == Number.class) return n;
+            if (type == Double.class) {
+                double d = n.doubleValue();
+                return sameValue(n, d) ? d : null;
+            }
+            if (type == Float.class) {
+                float f = n.floatValue();
+                return sameValue(n, f) ? f : null;
+            }
+            Long l = exactLong(n);
+            if (l == null) return null;
+            if (type == Long.class) return l;
+            if (type == Integer.class) return l == l.intValue() ? (Object) l.intValue() : null;
+            if (type == Short.class) return l == l.shortValue() ? (Object) l.shortValue() : null;
+            if (type == Byte.class) return l == l.byteValue() ? (Object) l.byteValue() : null;
+            return null;
+        }
+
+        private static Long exactLong(Number n) {
+            if (n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte) {
+                return n.longValue();
+            }
+            try {
+                return toBigDecimal(n).longValueExact();
+            } catch (ArithmeticException | NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private static boolean sameValue(Number original, double converted) {
+            if (Double.isNaN(converted) || Double.isInfinite(converted)) {
+                return (original instanceof Double || original instanceof Float)
+                        && Double.compare(original.doubleValue(), converted) == 0;
+            }
+            return toBigDecimal(original).compareTo(new BigDecimal(converted)) == 0;
+        }
+
+        /**
+         * The exact value of a number; throws NumberFormatException for NaN and infinities.
+         */
+        private static BigDecimal toBigDecimal(Number n) {
+            if (n instanceof BigDecimal) return (BigDecimal) n;
+            if (n instanceof BigInteger) return new BigDecimal((BigInteger) n);
+            if (n instanceof Double || n instanceof Float) return new BigDecimal(n.doubleValue());
+            return BigDecimal.valueOf(n.longValue());
+        }
+    }
+
+    private static final class NestedConverter implements Converter {
+        private final Class<?> type;
+        private volatile Binder<?> binder;
+
+        NestedConverter(Class<?> type) {
+            this.type = type;
+        }
+
+        // Resolved on first use, so that self-referential classes don't recurse forever.
+        @SuppressWarnings("unchecked")
+        private Binder<Object> binder() {
+            if (binder == null) {
+                binder = Binder.of(type);
+            }
+            return (Binder<Object>) binder;
+        }
+
+        public Hopefully<Object> read(Object raw, Path parent, Object key) {
+            if (raw == null) {
+                return Hopefully.nullValue().withPath(parent.dot(key));
+            }
+            return binder().read(raw, parent.dot(key));
+        }
+
+        public Object write(Object value) {
+            return value == null ? null : binder().write(value);
+        }
+    }
+
+    /**
+     * Binds a Map field to a copy of the map, whether it is Stuff or a plain java.util.Map.  A
+     * map with a null key is the wrong type, as JSON has no way to write it.
+     */
+    private static final class MapConverter implements Converter {
+        public Hopefully<Object> read(Object raw, Path parent, Object key) {
+            if (raw == null) {
+                return Hopefully.nullValue().withPath(parent.dot(key));
+            }
+            if (!Stuff.isMapLike(raw)) {
+                return wrongType(raw, Map.class, parent.dot(key));
+            }
+            Hopefully<Map<Object, Object>> map = raw instanceof Stuff
+                    ? ((Stuff) raw).asMapOf(Object.class, Object.class)
+                    : Hopefully.notNull(raw).asMapOf(Object.class, Object.class);
+            Hopefully<Object> copy = map.map(m -> new LinkedHashMap<>(m));
+            return copy.isActualValue() ? copy : copy.withPath(parent.dot(key));
+        }
+
+        public Object write(Object value) {
+            return value == null ? null : Stuff.fromMap((Map<?, ?>) value);
+        }
+    }
+
+    private static final class ListConverter implements Converter {
+        private final Converter elements;
+
+        ListConverter(Converter elements) {
+            this.elements = elements;
+        }
+
+        public Hopefully<Object> read(Object raw, Path parent, Object key) {
+            if (raw == null) {
+                return Hopefully.nullValue().withPath(parent.dot(key));
+            }
+            if (!Stuff.isListLike(raw)) {
+                return wrongType(raw, List.class, parent.dot(key));
+            }
+
+            Path path = parent.dot(key);
+            int size = Stuff.sizeOf(raw);
+            List<Object> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Object element = Stuff.getRawFrom(raw, i, null);
+                if (element == null) {
+                    result.add(null);
+                    continue;
+                }
+                Hopefully<Object> h = elements.read(element, path, i);
+                if (!h.isActualValue()) {
+                    return h;
+                }
+                h.ifActualValue(result::add);
+            }
+            return Hopefully.notNull(result);
+        }
+
+        public Object write(Object value) {
+            if (value == null) {
+                return null;
+            }
+            List<?> list = (List<?>) value;
+            Object[] converted = new Object[list.size()];
+            for (int i = 0; i < converted.length; i++) {
+                converted[i] = elements.write(list.get(i));
+            }
+            return Stuff.listOf(converted);
+        }
+    }
+}
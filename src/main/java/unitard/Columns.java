@@ -0,0 +1,578 @@
+package unitard;
+
+import java.math.BigInteger;
+import java.util.*;
+import java.util.function.DoublePredicate;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * An immutable, column-oriented copy of a few fields from every record in a list, for scanning
+ * and aggregating them without a Hopefully or a boxed number per value.
+ *
+ * Each field becomes a column of the narrowest kind that holds all of its values: integral
+ * numbers in a long[], other numbers in a double[], strings as int codes into a dictionary of
+ * the distinct strings, and anything else (booleans, nested Stuff, a mix of kinds, or BigInteger,
+ * BigDecimal and Longs beyond 2^53 among doubles, which would lose precision) as plain objects.
+ * Numbers read back with the boxed type they had.  Two bitmaps per column record
+ * which rows hold a value and which hold null; a row in neither had nothing at that path.
+ *
+ * Projection and the kernels split large tables across the common fork-join pool.
+ *
+ * <pre>
+ * Columns trades = stuff.project(Path.of("trades"), Path.of("price"), Path.of("channel")).unsafeGet();
+ * Number buyVolume = trades.filterStrings(Path.of("channel"), "buy"::equals).unsafeGet().sum(Path.of("price")).unsafeGet();
+ * </pre>
+ */
+public final class Columns {
+
+    private static final int PARALLEL_THRESHOLD = 2048;
+    private static final Object ABSENT = new Object();
+
+    private final List<Path> fields;
+    private final Map<Path, Column> columns;
+    private final int size;
+
+    private Columns(List<Path> fields, Map<Path, Column> columns, int size) {
+        this.fields = fields;
+        this.columns = columns;
+        this.size = size;
+    }
+
+    static Hopefully<Columns> project(Stuff stuff, Path list, List<Path> fields) {
+        Hopefully<Object> found = list.isEmpty() ? Hopefully.notNull(stuff) : PathSet.of(list).getFrom(stuff).get(0);
+        return found.flatMap(records -> Stuff.isListLike(records)
+                ? Hopefully.notNull(project(records, fields))
+                : Hopefully.wrongType(records.getClass(), List.class));
+    }
+
+    private static Columns project(Object records, List<Path> fields) {
+        int size = Stuff.sizeOf(records);
+        PathSet paths = PathSet.of(fields);
+        Object[][] raw = new Object[fields.size()][size];
+
+        rows(size).forEach(i -> {
+            Object[] values = new Object[fields.size()];
+            paths.getRawFrom(Stuff.getRawFrom(records, i, null), values, ABSENT);
+            for (int f = 0; f < values.length; f++) {
+                raw[f][i] = values[f];
+            }
+        });
+
+        Map<Path, Column> columns = new LinkedHashMap<>();
+        for (int f = 0; f < fields.size(); f++) {
+            columns.put(fields.get(f), Column.of(raw[f]));
+        }
+        return new Columns(Collections.unmodifiableList(new ArrayList<>(columns.keySet())), columns, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public List<Path> getFields() {
+        return fields;
+    }
+
+    /**
+     * The value of a field in one row, with the same path as reading it from the original list
+     * (relative to the list).
+     */
+    public Hopefully<Object> get(int row, Path field) {
+        Column column = columns.get(field);
+        Hopefully<Object> value;
+        if (column == null || row < 0 || row >= size || !(column.values.get(row) || column.nulls.get(row))) {
+            value = Hopefully.missing();
+        } else {
+            value = column.nulls.get(row) ? Hopefully.nullValue() : Hopefully.notNull(column.get(row));
+        }
+        return value.withPath(Path.of(row).join(field));
+    }
+
+    /**
+     * The number of rows with a non-null value for the field.
+     */
+    public Hopefully<Integer> count(Path field) {
+        return column(field).map(column -> column.values.cardinality());
+    }
+
+    /**
+     * The sum of a numeric field, as a Long, or a Double if it does not fit in a long; absent
+     * and null values are skipped.
+     */
+    public Hopefully<Number> sum(Path field) {
+        return column(field).flatMap(column -> {
+            if (column instanceof LongColumn) {
+                return Hopefully.notNull(sum(((LongColumn) column).longs));
+            } else if (column instanceof DoubleColumn) {
+                double[] doubles = ((DoubleColumn) column).doubles;
+                return Hopefully.notNull(size >= PARALLEL_THRESHOLD ? Arrays.stream(doubles).parallel().sum() : Arrays.stream(doubles).sum());
+            }
+            return column.notNumeric(field);
+        });
+    }
+
+    private Number sum(long[] longs) {
+        try {
+            LongStream stream = size >= PARALLEL_THRESHOLD ? Arrays.stream(longs).parallel() : Arrays.stream(longs);
+            return stream.reduce(0L, Math::addExact);
+        } catch (ArithmeticException e) {
+            // A running total overflowed, though the sum may still fit
+            BigInteger total = BigInteger.ZERO;
+            for (long l : longs) {
+                total = total.add(BigInteger.valueOf(l));
+            }
+            return total.bitLength() < 64 ? (Number) total.longValue() : (Number) total.doubleValue();
+        }
+    }
+
+    /**
+     * The smallest value of a numeric field, or Missing if it has no values.
+     */
+    public Hopefully<Number> min(Path field) {
+        return column(field).flatMap(column -> extreme(field, column, true));
+    }
+
+    /**
+     * The largest value of a numeric field, or Missing if it has no values.
+     */
+    public Hopefully<Number> max(Path field) {
+        return column(field).flatMap(column -> extreme(field, column, false));
+    }
+
+    private Hopefully<Number> extreme(Path field, Column column, boolean min) {
+        IntStream present = rows(size).filter(column.values::get);
+        Optional<? extends Number> result;
+        if (column instanceof LongColumn) {
+            long[] longs = ((LongColumn) column).longs;
+            OptionalLong r = min ? present.mapToLong(i -> longs[i]).min() : present.mapToLong(i -> longs[i]).max();
+            result = r.isPresent() ? Optional.of(r.getAsLong()) : Optional.empty();
+        } else if (column instanceof DoubleColumn) {
+            double[] doubles = ((DoubleColumn) column).doubles;
+            OptionalDouble r = min ? present.mapToDouble(i -> doubles[i]).min() : present.mapToDouble(i -> doubles[i]).max();
+            result = r.isPresent() ? Optional.of(r.getAsDouble()) : Optional.empty();
+        } else {
+            return column.notNumeric(field);
+        }
+        return result.isPresent() ? Hopefully.<Number>notNull(result.get()) : Hopefully.<Number>missing().withPath(field);
+    }
+
+    /**
+     * The rows whose value for an integral field matches; rows without a value never match.
+     */
+    public Hopefully<Columns> filterLongs(Path field, LongPredicate predicate) {
+        return column(field).flatMap(column -> {
+            if (!(column instanceof LongColumn)) {
+                return column.wrongType(field, Long.class);
+            }
+            long[] longs = ((LongColumn) column).longs;
+            return Hopefully.notNull(select(column, i -> predicate.test(longs[i])));
+        });
+    }
+
+    /**
+     * The rows whose value for a numeric field matches; integral values are tested as doubles.
+     */
+    public Hopefully<Columns> filterDoubles(Path field, DoublePredicate predicate) {
+        return column(field).flatMap(column -> {
+            if (column instanceof LongColumn) {
+                long[] longs = ((LongColumn) column).longs;
+                return Hopefully.notNull(select(column, i -> predicate.test(longs[i])));
+            } else if (column instanceof DoubleColumn) {
+                double[] doubles = ((DoubleColumn) column).doubles;
+                return Hopefully.notNull(select(column, i -> predicate.test(doubles[i])));
+            }
+            return column.notNumeric(field);
+        });
+    }
+
+    /**
+     * The rows whose value for a string field matches.  The predicate is tested once per
+     * distinct string, not once per row.
+     */
+    public Hopefully<Columns> filterStrings(Path field, Predicate<String> predicate) {
+        return column(field).flatMap(column -> {
+            if (!(column instanceof StringColumn)) {
+                return column.wrongType(field, String.class);
+            }
+            StringColumn strings = (StringColumn) column;
+            boolean[] matches = new boolean[strings.dictionary.length];
+            for (int c = 0; c < matches.length; c++) {
+                matches[c] = predicate.test(strings.dictionary[c]);
+            }
+            return Hopefully.notNull(select(column, i -> matches[strings.codes[i]]));
+        });
+    }
+
+    /**
+     * The rows whose value for any field matches, as it would be read from Stuff.
+     */
+    public Hopefully<Columns> filter(Path field, Predicate<Object> predicate) {
+        return column(field).map(column -> select(column, i -> predicate.test(column.get(i))));
+    }
+
+    private Columns select(Column column, IntPredicate matches) {
+        int[] rows = rows(size).filter(i -> column.values.get(i) && matches.test(i)).toArray();
+        return select(rows);
+    }
+
+    private Columns select(int[] rows) {
+        Map<Path, Column> selected = new LinkedHashMap<>();
+        for (Map.Entry<Path, Column> e : columns.entrySet()) {
+            selected.put(e.getKey(), e.getValue().select(rows));
+        }
+        return new Columns(fields, selected, rows.length);
+    }
+
+    /**
+     * One row as a map, with each value that was present put back at its field's path.
+     */
+    public Stuff row(int row) {
+        Stuff result = null;
+        for (Map.Entry<Path, Column> e : columns.entrySet()) {
+            Column column = e.getValue();
+            if (column.values.get(row)) {
+                result = putAt(result, e.getKey().getElements(), 0, column.get(row));
+            } else if (column.nulls.get(row)) {
+                result = putAt(result, e.getKey().getElements(), 0, null);
+            }
+        }
+        return result == null ? Stuff.EMPTY_MAP : result;
+    }
+
+    /**
+     * Turns the table back into a list of rows.
+     */
+    public Stuff toStuff() {
+        Object[] rows = new Object[size];
+        rows(size).forEach(i -> rows[i] = row(i));
+        return Stuff.wrapOwnedList(Arrays.asList(rows));
+    }
+
+    @Override
+    public String toString() {
+        return "Columns(" + size + " rows of " + fields + ")";
+    }
+
+    /**
+     * Puts a value at a path, making a list for each index and a map for each other key, and
+     * padding lists with nulls up to the index.  A null node is made from the first key.
+     */
+    private static Stuff putAt(Stuff existing, List<Object> path, int depth, Object value) {
+        if (path.isEmpty()) {
+            return Hopefully.notNull(value).asStuff().getOrElse(() -> existing == null ? Stuff.EMPTY_MAP : existing);
+        }
+        Object key = path.get(depth);
+        Stuff node = existing != null ? existing : key instanceof Integer ? Stuff.EMPTY_LIST : Stuff.EMPTY_MAP;
+        if (key instanceof Integer && Stuff.isListLike(node)) {
+            while (node.size() <= (Integer) key) {
+                node = node.add(null);
+            }
+        }
+        if (depth == path.size() - 1) {
+            return node.put(key, value);
+        }
+        Object child = node.getRaw(key, null);
+        return node.put(key, putAt(child instanceof Stuff ? (Stuff) child : null, path, depth + 1, value));
+    }
+
+    /**
+     * A projected field's column; Missing, like any absent value, for a field not projected.
+     */
+    private Hopefully<Column> column(Path field) {
+        Column column = columns.get(field);
+        return column == null ? Hopefully.<Column>missing().withPath(field) : Hopefully.notNull(column);
+    }
+
+    private static IntStream rows(int size) {
+        IntStream rows = IntStream.range(0, size);
+        return size >= PARALLEL_THRESHOLD ? rows.parallel() : rows;
+    }
+
+    private abstract static class Column {
+        /** Rows with a non-null value. */
+        final BitSet values;
+        /** Rows holding null. */
+        final BitSet nulls;
+
+        Column(BitSet values, BitSet nulls) {
+            this.values = values;
+            this.nulls = nulls;
+        }
+
+        /**
+         * The value of a row that has one.
+         */
+        abstract Object get(int row);
+
+        abstract Column select(int[] rows, BitSet values, BitSet nulls);
+
+        abstract Class<?> type();
+
+        final Column select(int[] rows) {
+            BitSet selectedValues = new BitSet(rows.length);
+            BitSet selectedNulls = new BitSet(rows.length);
+            for (int i = 0; i < rows.length; i++) {
+                selectedValues.set(i, values.get(rows[i]));
+                selectedNulls.set(i, nulls.get(rows[i]));
+            }
+            return select(rows, selectedValues, selectedNulls);
+        }
+
+        final <A> Hopefully<A> wrongType(Path field, Class<?> expected) {
+            return Hopefully.<A>wrongType(type(), expected).withPath(field);
+        }
+
+        final <A> Hopefully<A> notNumeric(Path field) {
+            return wrongType(field, Number.class);
+        }
+
+        static Column of(Object[] raw) {
+            BitSet values = new BitSet(raw.length);
+            BitSet nulls = new BitSet(raw.length);
+            boolean integral = true, numeric = true, strings = true, exact = true;
+            for (int i = 0; i < raw.length; i++) {
+                Object value = raw[i];
+                if (value == null) {
+                    nulls.set(i);
+                } else if (value != ABSENT) {
+                    values.set(i);
+                    byte kind = NumberKinds.of(value);
+                    integral &= kind >= 0 && kind < NumberKinds.DOUBLE;
+                    numeric &= kind >= 0;
+                    strings &= value instanceof String;
+                    exact &= !(value instanceof Long) || ((Long) value >= -(1L << 53) && (Long) value <= 1L << 53);
+                }
+            }
+
+            if (integral) {
+                long[] longs = new long[raw.length];
+                for (int i = values.nextSetBit(0); i >= 0; i = values.nextSetBit(i + 1)) {
+                    longs[i] = ((Number) raw[i]).longValue();
+                }
+                return new LongColumn(longs, NumberKinds.of(raw, values), values, nulls);
+            } else if (numeric && exact) {
+                double[] doubles = new double[raw.length];
+                for (int i = values.nextSetBit(0); i >= 0; i = values.nextSetBit(i + 1)) {
+                    doubles[i] = ((Number) raw[i]).doubleValue();
+                }
+                return new DoubleColumn(doubles, NumberKinds.of(raw, values), values, nulls);
+            } else if (strings) {
+                Map<String, Integer> codesByString = new HashMap<>();
+                int[] codes = new int[raw.length];
+                for (int i = values.nextSetBit(0); i >= 0; i = values.nextSetBit(i + 1)) {
+                    String s = (String) raw[i];
+                    Integer code = codesByString.get(s);
+                    if (code == null) {
+                        code = codesByString.size();
+                        codesByString.put(s, code);
+                    }
+                    codes[i] = code;
+                }
+                String[] dictionary = new String[codesByString.size()];
+                for (Map.Entry<String, Integer> e : codesByString.entrySet()) {
+                    dictionary[e.getValue()] = e.getKey();
+                }
+                return new StringColumn(codes, dictionary, values, nulls);
+            } else {
+                Object[] objects = new Object[raw.length];
+                for (int i = values.nextSetBit(0); i >= 0; i = values.nextSetBit(i + 1)) {
+                    objects[i] = raw[i];
+                }
+                return new ObjectColumn(objects, values, nulls);
+            }
+        }
+    }
+
+    /**
+     * The boxed type of each value in a numeric column, so that values read back as they were:
+     * one type for the whole column, or one per row if they were mixed.
+     */
+    private static final class NumberKinds {
+        static final byte LONG = 0, INTEGER = 1, SHORT = 2, BYTE = 3, DOUBLE = 4, FLOAT = 5;
+
+        final byte only;
+        final byte[] each;
+
+        private NumberKinds(byte only, byte[] each) {
+            this.only = only;
+            this.each = each;
+        }
+
+        /**
+         * The kind of a number that a long[] or double[] holds exactly, or -1.
+         */
+        static byte of(Object value) {
+            if (value instanceof Long) return LONG;
+            if (value instanceof Integer) return INTEGER;
+            if (value instanceof Short) return SHORT;
+            if (value instanceof Byte) return BYTE;
+            if (value instanceof Double) return DOUBLE;
+            if (value instanceof Float) return FLOAT;
+            return -1;
+        }
+
+        static NumberKinds of(Object[] raw, BitSet values) {
+            int first = values.nextSetBit(0);
+            byte only = first < 0 ? LONG : of(raw[first]);
+            byte[] each = null;
+            for (int i = values.nextSetBit(0); i >= 0; i = values.nextSetBit(i + 1)) {
+                byte kind = of(raw[i]);
+                if (kind != only && each == null) {
+                    each = new byte[raw.length];
+                    Arrays.fill(each, only);
+                }
+                if (each != null) {
+                    each[i] = kind;
+                }
+            }
+            return new NumberKinds(only, each);
+        }
+
+        byte at(int row) {
+            return each == null ? only : each[row];
+        }
+
+        NumberKinds select(int[] rows) {
+            if (each == null) {
+                return this;
+            }
+            byte[] selected = new byte[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                selected[i] = each[rows[i]];
+            }
+            return new NumberKinds(only, selected);
+        }
+
+        Object box(long value, int row) {
+            switch (at(row)) {
+                case INTEGER: return (int) value;
+                case SHORT: return (short) value;
+                case BYTE: return (byte) value;
+                case DOUBLE: return (double) value;
+                case FLOAT: return (float) value;
+                default: return value;
+            }
+        }
+
+        Object box(double value, int row) {
+            byte kind = at(row);
+            return kind == DOUBLE ? (Object) value : kind == FLOAT ? (Object) (float) value : box((long) value, row);
+        }
+    }
+
+    private static final class LongColumn extends Column {
+        /** Zero where there is no value, so sums can ignore the bitmaps. */
+        final long[] longs;
+        final NumberKinds kinds;
+
+        LongColumn(long[] longs, NumberKinds kinds, BitSet values, BitSet nulls) {
+            super(values, nulls);
+            this.longs = longs;
+            this.kinds = kinds;
+        }
+
+        Object get(int row) {
+            return kinds.box(longs[row], row);
+        }
+
+        Column select(int[] rows, BitSet values, BitSet nulls) {
+            long[] selected = new long[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                selected[i] = longs[rows[i]];
+            }
+            return new LongColumn(selected, kinds.select(rows), values, nulls);
+        }
+
+        Class<?> type() {
+            return Long.class;
+        }
+    }
+
+    /**
+     * Floating-point values, and any integral values mixed in with them, as long as each fits a
+     * double exactly.
+     */
+    private static final class DoubleColumn extends Column {
+        /** Zero where there is no value, so sums can ignore the bitmaps. */
+        final double[] doubles;
+        final NumberKinds kinds;
+
+        DoubleColumn(double[] doubles, NumberKinds kinds, BitSet values, BitSet nulls) {
+            super(values, nulls);
+            this.doubles = doubles;
+            this.kinds = kinds;
+        }
+
+        Object get(int row) {
+            return kinds.box(doubles[row], row);
+        }
+
+        Column select(int[] rows, BitSet values, BitSet nulls) {
+            double[] selected = new double[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                selected[i] = doubles[rows[i]];
+            }
+            return new DoubleColumn(selected, kinds.select(rows), values, nulls);
+        }
+
+        Class<?> type() {
+            return Double.class;
+        }
+    }
+
+    private static final class StringColumn extends Column {
+        final int[] codes;
+        final String[] dictionary;
+
+        StringColumn(int[] codes, String[] dictionary, BitSet values, BitSet nulls) {
+            super(values, nulls);
+            this.codes = codes;
+            this.dictionary = dictionary;
+        }
+
+        Object get(int row) {
+            return dictionary[codes[row]];
+        }
+
+        Column select(int[] rows, BitSet values, BitSet nulls) {
+            int[] selected = new int[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                selected[i] = codes[rows[i]];
+            }
+            return new StringColumn(selected, dictionary, values, nulls);
+        }
+
+        Class<?> type() {
+            return String.class;
+        }
+    }
+
+    private static final class ObjectColumn extends Column {
+        final Object[] objects;
+
+        ObjectColumn(Object[] objects, BitSet values, BitSet nulls) {
+            super(values, nulls);
+            this.objects = objects;
+        }
+
+        Object get(int row) {
+            return objects[row];
+        }
+
+        Column select(int[] rows, BitSet values, BitSet nulls) {
+            Object[] selected = new Object[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                selected[i] = objects[rows[i]];
+            }
+            return new ObjectColumn(selected, values, nulls);
+        }
+
+        Class<?> type() {
+            return Object.class;
+        }
+    }
+}
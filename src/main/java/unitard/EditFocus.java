@@ -4,4 +4,8 @@ public interface EditFocus extends Focus {
     Stuff done();
     Hopefully<Stuff> hopefullyDone();
     EditFocus at(Object key, Object... keys);
+    EditFocus up();
+    EditFocus left();
+    EditFocus right();
+    EditFocus next();
 }
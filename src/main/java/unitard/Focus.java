@@ -11,4 +11,20 @@ public interface Focus {
     EditFocus remove(Object key);
     EditFocus add(Object key);
     EditFocus insert(int index, Object key);
+
+    /**
+     * The parent of this focus, with any edits made here applied to it.
+     */
+    Focus up();
+
+    /**
+     * The previous and next elements of the same list.
+     */
+    Focus left();
+    Focus right();
+
+    /**
+     * The next sibling: the next element of a list, or the next key of a map in its iteration order.
+     */
+    Focus next();
 }
@@ -25,6 +25,10 @@ public abstract class Hopefully<A> {
         return new Missing(Path.EMPTY);
     }
 
+    public static <A> Hopefully<A> wrongType(Class<?> found, Class<?> expected) {
+        return new WrongType(Path.EMPTY, found, expected);
+    }
+
     public static <K,V> Hopefully<V> getFromMap(Map<K,V> map, K key) {
         Path path = Path.of(key);
         if (map.containsKey(key)) {
@@ -214,14 +218,17 @@ public abstract class Hopefully<A> {
     public final <K,V> Hopefully<Map<K,V>> asMapOf(Class<K> keyType, Class<V> valueType) {
         return as(Map.class).flatMap(map -> {
             for (Map.Entry<?,?> e : ((Map<?,?>)map).entrySet()) {
+                if (e.getKey() == null) {
+                    // No key type admits a null key
+                    return new WrongType(Path.EMPTY, Void.class, keyType);
+                }
                 Class<?> foundKeyType = e.getKey().getClass();
                 if (!keyType.isAssignableFrom(foundKeyType)) {
                     return new WrongType(Path.EMPTY, foundKeyType, keyType);
                 }
 
-                Class foundValueType = e.getKey().getClass();
-                if (!valueType.isAssignableFrom(foundValueType)) {
-                    return new WrongType(Path.EMPTY, foundValueType, valueType);
+                if (e.getValue() != null && !valueType.isAssignableFrom(e.getValue().getClass())) {
+                    return new WrongType(Path.EMPTY, e.getValue().getClass(), valueType);
                 }
             }
 
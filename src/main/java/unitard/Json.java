@@ -0,0 +1,65 @@
+package unitard;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Conversions between Stuff and JSON, for the parts of the library that persist or transmit it.
+ */
+final class Json {
+
+    static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Converts Stuff (and any Stuff nested in maps or lists) into plain java.util collections,
+     * which Jackson knows how to write.
+     */
+    static Object toPlain(Object value) {
+        if (Stuff.isMapLike(value)) {
+            Map<Object, Object> map = new LinkedHashMap<>();
+            if (value instanceof Stuff) {
+                for (Entry e : (Stuff) value) {
+                    map.put(e.getKey(), toPlain(e.getValue()));
+                }
+            } else {
+                for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                    map.put(e.getKey(), toPlain(e.getValue()));
+                }
+            }
+            return map;
+        } else if (Stuff.isListLike(value)) {
+            int size = Stuff.sizeOf(value);
+            List<Object> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(toPlain(Stuff.getRawFrom(value, i, null)));
+            }
+            return list;
+        }
+        return value;
+    }
+
+    static byte[] write(Object value) throws IOException {
+        return MAPPER.writeValueAsBytes(toPlain(value));
+    }
+
+    static Object read(byte[] bytes, int offset, int length) throws IOException {
+        return MAPPER.readValue(bytes, offset, length, Object.class);
+    }
+
+    /**
+     * Wraps a freshly parsed value without copying it: a Map or List becomes Stuff, and any
+     * other value is the wrong type.
+     */
+    static Hopefully<Stuff> adopt(Object parsed) {
+        if (parsed instanceof Map) {
+            return Hopefully.notNull(Stuff.adopt((Map<?, ?>) parsed));
+        } else if (parsed instanceof List) {
+            return Hopefully.notNull(Stuff.adopt((List<?>) parsed));
+        }
+        return parsed == null ? Hopefully.nullValue() : Hopefully.notNull(parsed).asStuff();
+    }
+
+    private Json() {}
+}
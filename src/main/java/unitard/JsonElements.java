@@ -0,0 +1,201 @@
+package unitard;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingJsonFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Pulls elements one at a time out of a JSON input, using the jackson-core streaming parser.
+ *
+ * Only the element currently being read is held in memory; everything before the target array
+ * is skipped without being materialised.  Since elements are only parsed when the consumer asks
+ * for the next one, a slow consumer naturally holds back the parser.
+ */
+final class JsonElements implements Iterator<Hopefully<Stuff>> {
+
+    private static final JsonFactory FACTORY = new MappingJsonFactory();
+
+    private final JsonParser parser;
+    private final Path basePath;
+    private final boolean rootSequence;
+    private int index = 0;
+    private Hopefully<Stuff> next;
+    private boolean finished;
+
+    private JsonElements(JsonParser parser, Path basePath, boolean rootSequence) {
+        this.parser = parser;
+        this.basePath = basePath;
+        this.rootSequence = rootSequence;
+    }
+
+    /**
+     * Elements of the array found at the path; empty if there is no array there.
+     */
+    static Stream<Hopefully<Stuff>> arrayAt(InputStream in, Path arrayPath) {
+        try {
+            JsonParser parser = FACTORY.createParser(in);
+            JsonElements elements = new JsonElements(parser, arrayPath, false);
+            if (parser.nextToken() == null || !seek(parser, arrayPath) || parser.getCurrentToken() != JsonToken.START_ARRAY) {
+                elements.finished = true;
+            }
+            return elements.stream();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Each top-level value of newline-delimited (or just whitespace-delimited) JSON.
+     */
+    static Stream<Hopefully<Stuff>> rootValues(InputStream in) {
+        try {
+            return new JsonElements(FACTORY.createParser(in), Path.EMPTY, true).stream();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Hands each element to the consumer on a pool of threads.  At most twice as many elements
+     * as there are threads are parsed ahead of the consumers, so memory stays bounded by the
+     * size of the largest few elements.  Returns once every element has been consumed, rethrowing
+     * the first exception a consumer threw.
+     */
+    static void forEachParallel(Stream<Hopefully<Stuff>> elements, int threads, Consumer<Hopefully<Stuff>> consumer) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Semaphore inFlight = new Semaphore(threads * 2);
+        List<Future<?>> pending = new ArrayList<>();
+        try {
+            for (Iterator<Hopefully<Stuff>> it = elements.iterator(); it.hasNext();) {
+                Hopefully<Stuff> element = it.next();
+                inFlight.acquireUninterruptibly();
+                pending.add(pool.submit(() -> {
+                    try {
+                        consumer.accept(element);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+                // Finished futures are checked before being dropped, so no failure is lost
+                for (Iterator<Future<?>> f = pending.iterator(); f.hasNext();) {
+                    Future<?> done = f.next();
+                    if (done.isDone()) {
+                        done.get();
+                        f.remove();
+                    }
+                }
+            }
+            for (Future<?> f : pending) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        } finally {
+            pool.shutdownNow();
+            elements.close();
+        }
+    }
+
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            next = readNext();
+        }
+        return next != null;
+    }
+
+    public Hopefully<Stuff> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Hopefully<Stuff> result = next;
+        next = null;
+        return result;
+    }
+
+    private Hopefully<Stuff> readNext() {
+        try {
+            JsonToken token = parser.nextToken();
+            if (token == null || (!rootSequence && token == JsonToken.END_ARRAY)) {
+                finished = true;
+                return null;
+            }
+            Object value = parser.readValueAs(Object.class);
+            return Hopefully.notNull(value).asStuff().withPath(basePath.dot(index++));
+        } catch (IOException e) {
+            finished = true;
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Stream<Hopefully<Stuff>> stream() {
+        Spliterator<Hopefully<Stuff>> split = Spliterators.spliteratorUnknownSize(
+                this, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(split, false).onClose(() -> {
+            try {
+                parser.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Moves the parser from the start of a value to the start of the value at the path,
+     * skipping the children of everything it passes.
+     */
+    private static boolean seek(JsonParser parser, Path path) throws IOException {
+        for (Object key : path) {
+            JsonToken token = parser.getCurrentToken();
+            if (token == JsonToken.START_OBJECT && key instanceof String) {
+                if (!seekField(parser, (String) key)) {
+                    return false;
+                }
+            } else if (token == JsonToken.START_ARRAY && key instanceof Integer) {
+                if (!seekIndex(parser, (Integer) key)) {
+                    return false;
+                }
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean seekField(JsonParser parser, String key) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if (key.equals(name)) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private static boolean seekIndex(JsonParser parser, int index) throws IOException {
+        for (int i = 0; ; i++) {
+            JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.END_ARRAY) {
+                return false;
+            } else if (i == index) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+    }
+}
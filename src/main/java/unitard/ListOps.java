@@ -0,0 +1,110 @@
+package unitard;
+
+import java.util.*;
+
+/**
+ * Sorting, top-K and grouping of a list of records by the value at a path within each record.
+ *
+ * Keys are extracted from every element exactly once into a column, so comparators never look
+ * anything up.  The results are new list or map nodes holding the original element nodes.
+ * If any element's key is missing, null or of the wrong type, that failure is returned instead,
+ * with the path of the key within the list.
+ */
+final class ListOps {
+
+    private static final class Keyed {
+        final Object key;
+        final Object element;
+        final int index;
+
+        Keyed(Object key, Object element, int index) {
+            this.key = key;
+            this.element = element;
+            this.index = index;
+        }
+    }
+
+    static <K> Hopefully<Stuff> sortBy(Stuff list, Path keyPath, Class<K> keyType, Comparator<? super K> order) {
+        return extract(list, keyPath, keyType, false).map(keyed -> {
+            // Arrays.parallelSort on objects is stable, and sorts sequentially when small
+            Arrays.parallelSort(keyed, byKey(order));
+            return elementsOf(keyed, keyed.length);
+        });
+    }
+
+    static <K> Hopefully<Stuff> topK(Stuff list, Path keyPath, Class<K> keyType, Comparator<? super K> order, int k) {
+        return extract(list, keyPath, keyType, false).map(keyed -> {
+            if (k <= 0) {
+                return Stuff.EMPTY_LIST;
+            }
+            Comparator<Keyed> cmp = byKey(order);
+            PriorityQueue<Keyed> heap = new PriorityQueue<>(Math.min(k, keyed.length) + 1, cmp.reversed());
+            for (Keyed e : keyed) {
+                if (heap.size() < k) {
+                    heap.add(e);
+                } else if (cmp.compare(e, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(e);
+                }
+            }
+            Keyed[] top = heap.toArray(new Keyed[0]);
+            Arrays.sort(top, cmp);
+            return elementsOf(top, top.length);
+        });
+    }
+
+    static Hopefully<Stuff> groupBy(Stuff list, Path keyPath) {
+        return extract(list, keyPath, Object.class, true).map(keyed -> {
+            Map<Object, List<Object>> groups = new LinkedHashMap<>();
+            for (Keyed e : keyed) {
+                groups.computeIfAbsent(e.key, key -> new ArrayList<>()).add(e.element);
+            }
+            Map<Object, Object> result = new LinkedHashMap<>();
+            for (Map.Entry<Object, List<Object>> g : groups.entrySet()) {
+                result.put(g.getKey(), Stuff.wrapOwnedList(g.getValue()));
+            }
+            return Stuff.wrapOwnedMap(result);
+        });
+    }
+
+    /**
+     * Reads the key of every element into a column, or returns the first failure.
+     */
+    @SuppressWarnings("unchecked")
+    private static <K> Hopefully<Keyed[]> extract(Stuff list, Path keyPath, Class<K> keyType, boolean allowNull) {
+        if (!list.isListNode()) {
+            return Hopefully.wrongType(list.getClass(), List.class);
+        }
+
+        PathSet key = PathSet.of(keyPath);
+        Keyed[] keyed = new Keyed[list.size()];
+        for (int i = 0; i < keyed.length; i++) {
+            Object element = list.getRaw(i, null);
+            Hopefully<Object> found = keyPath.isEmpty() ? Hopefully.notNull(element) : key.getFrom(element).get(0);
+            Hopefully<K> typed = found.as(keyType);
+
+            if (typed.isActualValue() || (allowNull && typed.isNull())) {
+                keyed[i] = new Keyed(typed.getOrElse(() -> null), element, i);
+            } else {
+                return (Hopefully<Keyed[]>) (Hopefully<?>) typed.withPath(Path.of(i).join(keyPath));
+            }
+        }
+        return Hopefully.notNull(keyed);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> Comparator<Keyed> byKey(Comparator<? super K> order) {
+        Comparator<Keyed> keys = (a, b) -> order.compare((K) a.key, (K) b.key);
+        return keys.thenComparingInt(e -> e.index);
+    }
+
+    private static Stuff elementsOf(Keyed[] keyed, int count) {
+        List<Object> elements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            elements.add(keyed[i].element);
+        }
+        return Stuff.wrapOwnedList(elements);
+    }
+
+    private ListOps() {}
+}
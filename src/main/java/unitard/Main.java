@@ -1,81 +1,577 @@
 package unitard;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
 
-
+/**
+ * Command-line tool that queries and edits a stream of JSON documents.
+ *
+ * <pre>
+ * usage: unitard [options] [file ...]
+ *
+ * Reads newline-delimited JSON from each file, or from stdin if there are none or the file is -.
+ *
+ *   --array PATH       read the elements of the array at PATH in each input instead, e.g. tieredResults[0].results
+ *   --where PATH=JSON  keep documents whose value at PATH equals JSON (or the string, if it is not JSON)
+ *   --set PATH=JSON    put a value at PATH
+ *   --remove PATH      remove the value at PATH
+ *   --get PATH         output the value at PATH rather than the whole document; with several, output a map
+ *   --threads N        number of worker threads (default: the number of processors)
+ *   --unordered        write each result as soon as it is ready, rather than in input order
+ * </pre>
+ *
+ * Filters are applied first, then edits in the order given, then extraction.  Lines are parsed
+ * on the worker threads and at most a couple per thread are in flight, so memory use does not
+ * depend on the size of the input.  When done, throughput and the number of documents with each
+ * path missing or of the wrong type are reported to stderr.  An edit whose parent is missing
+ * leaves the document as it was, and counts as missing.  A line that is not valid JSON is
+ * counted and skipped; invalid JSON in an input read with --array ends that input, since the
+ * rest of the array cannot be found without it.
+ */
 public class Main {
 
-    @SuppressWarnings("unchecked")
     public static Stuff copyJsonNode(JsonNode node) {
-        ObjectMapper mapper = new ObjectMapper();
-        Map<String,Object> map = mapper.convertValue(node, Map.class);
-        return Stuff.fromMap(map);
+        return Hopefully.notNull(Json.MAPPER.convertValue(node, Object.class)).asStuff().unsafeGet();
+    }
+
+    private static final Set<String> OPTIONS = new HashSet<>(Arrays.asList(
+            "--array", "--where", "--set", "--remove", "--get", "--threads"));
+
+    private final List<String> inputs = new ArrayList<>();
+    private Path array = null;
+    private final List<Path> wherePaths = new ArrayList<>();
+    private final List<Object> whereValues = new ArrayList<>();
+    private final List<Edit> edits = new ArrayList<>();
+    private final List<Path> getPaths = new ArrayList<>();
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean ordered = true;
+
+    private final Map<Path, LongAdder> missing = new ConcurrentHashMap<>();
+    private final Map<Path, LongAdder> wrongType = new ConcurrentHashMap<>();
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder notStuff = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+    private final AtomicReference<String> firstMalformed = new AtomicReference<>();
+    private long bytesRead = 0;
+
+    private PathSet where;
+    private PathSet get;
+    private OutputStream out;
+
+    public static void main(String[] args) throws IOException {
+        Main main = new Main();
+        try {
+            main.parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: unitard [--array PATH] [--where PATH=JSON]... [--set PATH=JSON]... [--remove PATH]... "
+                    + "[--get PATH]... [--threads N] [--unordered] [file ...]");
+            System.exit(2);
+        }
+        main.run(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), System.err);
+    }
+
+    void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                inputs.add(arg);
+                continue;
+            }
+            if (arg.equals("--unordered")) {
+                ordered = false;
+                continue;
+            }
+            if (!OPTIONS.contains(arg)) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--array":
+                    array = parsePath(value);
+                    break;
+                case "--where":
+                    wherePaths.add(parsePath(before(value)));
+                    whereValues.add(parseValue(after(value)));
+                    break;
+                case "--set":
+                    edits.add(new Edit(parsePath(before(value)), parseValue(after(value)), false));
+                    break;
+                case "--remove":
+                    edits.add(new Edit(parsePath(value), null, true));
+                    break;
+                case "--get":
+                    getPaths.add(parsePath(value));
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    if (threads < 1) {
+                        throw new IllegalArgumentException("--threads must be at least 1");
+                    }
+                    break;
+            }
+        }
+        if (inputs.isEmpty()) {
+            inputs.add("-");
+        }
+    }
+
+    void run(OutputStream out, PrintStream report) throws IOException {
+        this.out = out;
+        this.where = PathSet.of(wherePaths);
+        this.get = PathSet.of(getPaths);
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (String input : inputs) {
+                CountingInputStream in = new CountingInputStream(
+                        input.equals("-") ? System.in : new FileInputStream(input));
+                try {
+                    if (array == null) {
+                        process(new Lines(input, in), pool);
+                    } else {
+                        try (Stream<Hopefully<Stuff>> docs = Stuff.streamElements(in, array)) {
+                            process(docs.<Document>map(doc -> () -> doc).iterator(), pool);
+                        } catch (UncheckedIOException e) {
+                            malformed(input, e.getCause());
+                        }
+                    }
+                } finally {
+                    bytesRead += in.count;
+                    in.close();
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            out.flush();
+        }
+        report(report, System.nanoTime() - start);
+    }
+
+    /**
+     * Runs each document on the pool, with at most two per thread parsed but not yet written.
+     * In order, the reading thread writes each result once it and all before it are done;
+     * otherwise the workers write their own results.
+     */
+    private void process(Iterator<Document> docs, ExecutorService pool) throws IOException {
+        int limit = threads * 2;
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+        Semaphore inFlight = new Semaphore(limit);
+        UncheckedIOException unreadable = null;
+        try {
+            while (docs.hasNext()) {
+                submit(docs.next(), pending, limit, inFlight, pool);
+            }
+        } catch (UncheckedIOException e) {
+            // Finish the documents already read before giving up on the input
+            unreadable = e;
+        }
+        while (!pending.isEmpty()) {
+            write(await(pending.poll()));
+        }
+        if (unreadable != null) {
+            throw unreadable;
+        }
+    }
+
+    private void submit(Document doc, ArrayDeque<Future<byte[]>> pending, int limit, Semaphore inFlight,
+                        ExecutorService pool) throws IOException {
+        if (ordered) {
+            if (pending.size() >= limit) {
+                write(await(pending.poll()));
+            }
+            pending.add(pool.submit(() -> apply(doc)));
+            while (!pending.isEmpty() && pending.peek().isDone()) {
+                write(await(pending.poll()));
+            }
+        } else {
+            inFlight.acquireUninterruptibly();
+            pending.add(pool.submit(() -> {
+                try {
+                    write(apply(doc));
+                    return null;
+                } finally {
+                    inFlight.release();
+                }
+            }));
+            // Only kept to rethrow failures; any may finish first
+            for (Iterator<Future<byte[]>> it = pending.iterator(); it.hasNext();) {
+                Future<byte[]> done = it.next();
+                if (done.isDone()) {
+                    await(done);
+                    it.remove();
+                }
+            }
+        }
     }
 
-    public static final JsonNode jsonNode;
+    private static byte[] await(Future<byte[]> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
 
-    static {
-        JsonNode n;
+    /**
+     * Filters, edits and extracts from one document, returning the line to write, or null.
+     */
+    private byte[] apply(Document document) throws IOException {
+        documents.increment();
+        Hopefully<Stuff> hopefullyDoc;
         try {
-            n = new ObjectMapper().readTree(new File("buy_response.json"));
+            hopefullyDoc = document.parse();
+        } catch (MalformedDocument e) {
+            malformed(e.where, e.getCause());
+            return null;
+        }
+        if (!hopefullyDoc.isActualValue()) {
+            notStuff.increment();
+            return null;
+        }
+        Stuff doc = hopefullyDoc.unsafeGet();
+
+        List<Hopefully<Object>> conditions = where.getFrom(doc);
+        for (int i = 0; i < conditions.size(); i++) {
+            Hopefully<Object> value = conditions.get(i);
+            Object expected = whereValues.get(i);
+            count(wherePaths.get(i), value);
+            if (!value.fold(path -> v -> Objects.equals(v, expected),
+                    path -> expected == null, path -> false, path -> found -> wanted -> false)) {
+                return null;
+            }
+        }
+
+        for (Edit edit : edits) {
+            Stuff before = doc;
+            Hopefully<Stuff> edited = edit.apply(before);
+            count(edit.path, edited);
+            doc = edited.getOrElse(() -> before);
+        }
+
+        Object result = doc;
+        if (!getPaths.isEmpty()) {
+            List<Hopefully<Object>> values = get.getFrom(doc);
+            Map<String, Object> extracted = new LinkedHashMap<>();
+            for (int i = 0; i < values.size(); i++) {
+                Hopefully<Object> value = values.get(i);
+                count(getPaths.get(i), value);
+                if (value.isActualValue() || value.isNull()) {
+                    extracted.put(getPaths.get(i).toString(), value.getOrElse(() -> null));
+                }
+            }
+            if (getPaths.size() == 1) {
+                if (extracted.isEmpty()) {
+                    return null;
+                }
+                result = extracted.values().iterator().next();
+            } else {
+                result = extracted;
+            }
+        }
+        return Json.write(result);
+    }
+
+    private void malformed(String where, Throwable e) {
+        malformed.increment();
+        String message = String.valueOf(e.getMessage());
+        int eol = message.indexOf('\n');
+        firstMalformed.compareAndSet(null, where + ": " + (eol < 0 ? message : message.substring(0, eol)));
+    }
+
+    private void count(Path path, Hopefully<?> value) {
+        if (value.isMissing()) {
+            missing.computeIfAbsent(path, p -> new LongAdder()).increment();
+        } else if (value.isWrongType()) {
+            wrongType.computeIfAbsent(path, p -> new LongAdder()).increment();
+        }
+    }
+
+    private void write(byte[] line) throws IOException {
+        if (line != null) {
+            synchronized (out) {
+                out.write(line);
+                out.write('\n');
+            }
+            written.increment();
+        }
+    }
+
+    private void report(PrintStream report, long nanos) {
+        double seconds = Math.max(nanos, 1) / 1e9;
+        report.printf("%d documents (%d written) in %.2fs: %.0f documents/s, %.1f MB/s%n",
+                documents.sum(), written.sum(), seconds,
+                documents.sum() / seconds, bytesRead / seconds / (1024 * 1024));
+        if (notStuff.sum() > 0) {
+            report.printf("  %d documents were not maps or lists%n", notStuff.sum());
+        }
+        if (malformed.sum() > 0) {
+            report.printf("  %d documents were not valid JSON, the first at %s%n", malformed.sum(), firstMalformed.get());
+        }
+        for (Path path : union(wherePaths, editPaths(), getPaths)) {
+            LongAdder m = missing.get(path), w = wrongType.get(path);
+            if (m != null || w != null) {
+                report.printf("  %s: %d missing, %d wrong type%n", path,
+                        m == null ? 0 : m.sum(), w == null ? 0 : w.sum());
+            }
+        }
+        report.flush();
+    }
+
+    private List<Path> editPaths() {
+        List<Path> paths = new ArrayList<>();
+        for (Edit edit : edits) {
+            paths.add(edit.path);
+        }
+        return paths;
+    }
+
+    @SafeVarargs
+    private static Set<Path> union(List<Path>... lists) {
+        Set<Path> all = new LinkedHashSet<>();
+        for (List<Path> list : lists) {
+            all.addAll(list);
+        }
+        return all;
+    }
+
+    /**
+     * Parses a path in the form Path.toString() produces, such as tieredResults[0].results.
+     */
+    static Path parsePath(String text) {
+        List<Object> elements = new ArrayList<>();
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '.' || c == '[') {
+                if (key.length() > 0) {
+                    elements.add(key.toString());
+                    key.setLength(0);
+                }
+                if (c == '[') {
+                    int close = text.indexOf(']', i);
+                    if (close < 0) {
+                        throw new IllegalArgumentException("Unclosed [ in path " + text);
+                    }
+                    try {
+                        elements.add(Integer.parseInt(text.substring(i + 1, close)));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Not an index in path " + text);
+                    }
+                    i = close;
+                }
+            } else {
+                key.append(c);
+            }
+        }
+        if (key.length() > 0) {
+            elements.add(key.toString());
+        }
+        return new Path(elements);
+    }
+
+    private static Object parseValue(String text) {
+        try {
+            return Json.MAPPER.readValue(text, Object.class);
         } catch (IOException e) {
-            n = null;
+            return text;
         }
-        jsonNode = n;
     }
 
-    public static final  Stuff stuff = copyJsonNode(jsonNode);
+    private static String before(String assignment) {
+        int eq = assignment.indexOf('=');
+        if (eq < 0) {
+            throw new IllegalArgumentException("Expected PATH=VALUE: " + assignment);
+        }
+        return assignment.substring(0, eq);
+    }
 
-    public static void main(String[] args) throws IOException {
-        Map<Object,Object> map = new HashMap<>();
-        Map<Object,Object> map2 = new HashMap<>();
-        map.put("a", map2);
-        map2.put("aa", Arrays.asList("aardvark", "apple", "agriculture"));
+    private static String after(String assignment) {
+        return assignment.substring(assignment.indexOf('=') + 1);
+    }
 
+    private static final class Edit {
+        final Path path;
+        final Object value;
+        final boolean remove;
 
-        //Hopefully<Map<String,Object>> r = stuff.get().asMapOf(String.class, Object.class);
-        Hopefully<String> r1 = stuff.get("tieredResults", 0, "results", 0, "channel").as(String.class);
-        Hopefully<String> r2 = stuff.get("tieredResults", 0, "results", 7, "channel").as(String.class);
-        Hopefully<String> r3 = stuff.get("tieredResults", 0, "results", "?", "channel").as(String.class);
-        Hopefully<Boolean> r4 = stuff.get("tieredResults", 0, "results", 0, "channel").as(Boolean.class);
-        Hopefully<String> r5 = stuff.get("tieredResults").asListOf(Object.class).map(o -> o.toString().substring(0, 20));
+        Edit(Path path, Object value, boolean remove) {
+            this.path = path;
+            this.value = value;
+            this.remove = remove;
+        }
 
-        System.out.println(r1);
-        System.out.println(r2);
-        System.out.println(r3);
-        System.out.println(r4);
-        System.out.println(r5);
+        /**
+         * The edited document, or why the edit could not be made, such as a missing parent.
+         */
+        Hopefully<Stuff> apply(Stuff doc) {
+            List<Object> keys = path.getElements();
+            if (keys.isEmpty()) {
+                return remove ? Hopefully.notNull(doc) : Hopefully.notNull(value).asStuff();
+            }
+            Object last = keys.get(keys.size() - 1);
+            if (keys.size() == 1) {
+                return Hopefully.notNull(remove ? doc.remove(last) : doc.put(last, value));
+            }
+            Focus parent = doc.at(keys.get(0), keys.subList(1, keys.size() - 1).toArray());
+            return (remove ? parent.remove(last) : parent.put(last, value)).hopefullyDone();
+        }
+    }
 
-        stuff.at("tieredResults", 0, "results", 0).remove("channel").done();
+    /**
+     * A document still to be parsed, so that parsing can run on the workers.
+     */
+    private interface Document {
+        Hopefully<Stuff> parse() throws MalformedDocument;
+    }
 
+    private static final class MalformedDocument extends IOException {
+        private static final long serialVersionUID = 1L;
 
+        final String where;
 
-        System.out.println("---------- REMOVE TEST ------------");
+        MalformedDocument(String where, IOException cause) {
+            super(cause);
+            this.where = where;
+        }
+    }
 
-        Stuff listed = Stuff.listOf("a", "b", "c", 1, 2, 3);
-        Stuff mapped = Stuff.mapOf("a", 1, "b", 2, "c", 3, "X");
-        System.out.println("Listed: " + listed);
-        System.out.println("Mapped: " + mapped);
+    /**
+     * Each non-blank line of an input, read in large chunks.
+     */
+    private static final class Lines implements Iterator<Document> {
+        private final String input;
+        private final InputStream in;
+        private byte[] buffer = new byte[1 << 16];
+        private int start = 0, end = 0;
+        private int lineNumber = 0;
+        private boolean eof = false;
+        private Document next;
 
-        Stuff fromMap = Stuff.fromMap(map);
+        Lines(String input, InputStream in) {
+            this.input = input;
+            this.in = in;
+        }
+
+        public boolean hasNext() {
+            try {
+                while (next == null && (start < end || !eof)) {
+                    next = readLine();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return next != null;
+        }
+
+        public Document next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Document result = next;
+            next = null;
+            return result;
+        }
 
-        System.out.println(fromMap);
-        System.out.println(fromMap.remove("a"));
-        System.out.println(fromMap.at("a").remove("aa").done());
+        /**
+         * The next line, or null if it is blank.
+         */
+        private Document readLine() throws IOException {
+            int eol = indexOf('\n', start);
+            while (eol < 0 && !eof) {
+                int scanned = end - start;
+                fill();
+                eol = indexOf('\n', start + scanned);
+            }
+            int lineEnd = eol < 0 ? end : eol;
+            byte[] line = Arrays.copyOfRange(buffer, start, lineEnd);
+            start = eol < 0 ? end : eol + 1;
+            String where = input + " line " + ++lineNumber;
+            for (byte b : line) {
+                if (b != ' ' && b != '\t' && b != '\r') {
+                    return () -> {
+                        try {
+                            return Json.adopt(Json.read(line, 0, line.length));
+                        } catch (IOException e) {
+                            throw new MalformedDocument(where, e);
+                        }
+                    };
+                }
+            }
+            return null;
+        }
 
-        System.out.println("---------- ADD TEST ------------");
+        private int indexOf(char c, int from) {
+            for (int i = from; i < end; i++) {
+                if (buffer[i] == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
 
-        System.out.println(fromMap);
-        System.out.println(fromMap.at("a").put("b", "BOB"));
-        System.out.println(fromMap.at("a").put("b", "BOB").done().get("a", "b"));
-        System.out.println(
-                fromMap.at("a").put("b", Stuff.EMPTY_MAP).at("b").put("c", "BOB").done().get("a", "b", "c"));
+        /**
+         * Reads more of the input, keeping the partial line at the start of the buffer.
+         */
+        private void fill() throws IOException {
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            if (end == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int n = in.read(buffer, end, buffer.length - end);
+            if (n < 0) {
+                eof = true;
+            } else {
+                end += n;
+            }
+        }
     }
 
-}
+    private static final class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
 
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
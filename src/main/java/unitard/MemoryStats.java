@@ -0,0 +1,414 @@
+package unitard;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * An estimate of the heap used by a Stuff, and how much of it is shared with another one.
+ *
+ * Every node, raw collection and leaf reachable from the root is visited once, by identity, so
+ * a subtree shared between several places (or between versions) is only counted once.  Sizes
+ * are estimates for a 64-bit JVM with compressed references and compact strings; map keys
+ * are included, and so are objects the JVM shares anyway, such as cached small integers.
+ *
+ * The retained size of a subtree counts each object under the first path it was reached by,
+ * which is exact for trees and an approximation where subtrees are shared.
+ *
+ * The walk uses an explicit stack rather than recursion, so depth is not limited by the thread
+ * stack.  A parallel walk splits the root's children across the common fork-join pool, and
+ * then removes double counts of objects reached from more than one of them.
+ */
+public final class MemoryStats {
+
+    static final int HEADER = 12, REFERENCE = 4, INT = 4, LONG = 8;
+
+    private static final int LARGEST = 10;
+
+    private final Map<String, Long> countsByType;
+    private final Map<String, Long> bytesByType;
+    private final long shallowBytes;
+    private final long retainedBytes;
+    private final long sharedBytes;
+    private final int maxDepth;
+    private final Map<Path, Long> largestSubtrees;
+
+    private MemoryStats(Walk walk, long shallowBytes, Map<Path, Long> largestSubtrees) {
+        this.countsByType = Collections.unmodifiableMap(walk.countsByType);
+        this.bytesByType = Collections.unmodifiableMap(walk.bytesByType);
+        this.shallowBytes = shallowBytes;
+        this.retainedBytes = walk.totalBytes;
+        this.sharedBytes = walk.sharedBytes;
+        this.maxDepth = walk.maxDepth;
+        this.largestSubtrees = Collections.unmodifiableMap(largestSubtrees);
+    }
+
+    /**
+     * @param sharedWith another Stuff, such as a previous version, or null
+     */
+    static MemoryStats of(Stuff root, Stuff sharedWith, boolean parallel) {
+        Set<Object> other = null;
+        if (sharedWith != null) {
+            Walk reachable = new Walk(null);
+            reachable.walk(sharedWith, null, -1, 0);
+            other = reachable.seen.keySet();
+        }
+
+        Walk walk = new Walk(other);
+        if (parallel && root.size() > 1) {
+            walk.visitRoot(root);
+            Set<Object> shared = other;
+            Walk[] children = IntStream.range(0, walk.rootChildren.size()).parallel()
+                    .mapToObj(i -> {
+                        Walk child = new Walk(shared);
+                        child.walk(walk.rootChildren.get(i), walk.rootChildKeys.get(i), -1, 1);
+                        return child;
+                    })
+                    .toArray(Walk[]::new);
+            for (Walk child : children) {
+                walk.absorb(child);
+            }
+        } else {
+            walk.walk(root, null, -1, 0);
+        }
+        return new MemoryStats(walk, shallowBytes(root), walk.largest(LARGEST));
+    }
+
+    /**
+     * The number of objects of each type: Stuff node classes by name, Map and List for raw
+     * collections, and the class name of each kind of leaf.
+     */
+    public Map<String, Long> getCountsByType() {
+        return countsByType;
+    }
+
+    /**
+     * The estimated shallow size of all the objects of each type.
+     */
+    public Map<String, Long> getBytesByType() {
+        return bytesByType;
+    }
+
+    /**
+     * The estimated size of the root node alone, including its own backing storage.
+     */
+    public long getShallowBytes() {
+        return shallowBytes;
+    }
+
+    /**
+     * The estimated size of everything reachable from the root, counting shared objects once.
+     */
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    /**
+     * How much of the retained size is also reachable from the Stuff given for comparison.
+     */
+    public long getSharedBytes() {
+        return sharedBytes;
+    }
+
+    /**
+     * The fraction of the retained size that is shared, between 0 and 1.
+     */
+    public double getSharedRatio() {
+        return retainedBytes == 0 ? 0 : (double) sharedBytes / retainedBytes;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * The biggest subtrees below the root, by retained size, largest first.
+     */
+    public Map<Path, Long> getLargestSubtrees() {
+        return largestSubtrees;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MemoryStats(retained=%d, shallow=%d, shared=%d (%.1f%%), maxDepth=%d, counts=%s, largest=%s)",
+                retainedBytes, shallowBytes, sharedBytes, getSharedRatio() * 100, maxDepth, countsByType, largestSubtrees);
+    }
+
+    static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * The size of an object with the given number of reference and int fields.
+     */
+    static long object(int references, int ints) {
+        return align(HEADER + references * REFERENCE + ints * INT);
+    }
+
+    static long array(int length, int elementBytes) {
+        return align(HEADER + INT + (long) length * elementBytes);
+    }
+
+    /**
+     * A HashMap with its table and one node per entry, as filled by copying or parsing.
+     */
+    static long hashMap(int size) {
+        int capacity = Integer.highestOneBit(Math.max(1, (int) (size / 0.75f)) * 2 - 1);
+        return object(4, 4) + (size == 0 ? 0 : array(capacity, REFERENCE)) + size * object(3, 1);
+    }
+
+    static long arrayList(int size) {
+        return object(1, 2) + array(size, REFERENCE);
+    }
+
+    static long shallowBytes(Object value) {
+        if (value instanceof Stuff) {
+            return ((Stuff) value).shallowBytes();
+        } else if (Stuff.isSharedStorage(value)) {
+            return Stuff.sharedStorageBytes(value);
+        } else if (value instanceof Map) {
+            return hashMap(((Map<?, ?>) value).size());
+        } else if (value instanceof List) {
+            return arrayList(((List<?>) value).size());
+        } else if (value instanceof String) {
+            return object(1, 2) + array(((String) value).length(), 1);
+        } else if (value instanceof Long || value instanceof Double) {
+            return align(HEADER + LONG);
+        } else if (value instanceof BigInteger) {
+            return object(1, 4) + array(((BigInteger) value).bitLength() / 32 + 1, INT);
+        } else if (value instanceof BigDecimal) {
+            return object(2, 2) + align(HEADER + LONG) + shallowBytes(((BigDecimal) value).unscaledValue());
+        } else {
+            return object(0, 1);
+        }
+    }
+
+    private static String typeOf(Object value) {
+        if (value instanceof Map) {
+            return "Map";
+        } else if (value instanceof List) {
+            return "List";
+        }
+        return value.getClass().getSimpleName();
+    }
+
+    /**
+     * One depth-first walk, recording each node in pre-order with the index of its parent so
+     * that subtree sizes can be summed afterwards without recursion.
+     */
+    private static final class Walk {
+        final IdentityHashMap<Object, Boolean> seen = new IdentityHashMap<>();
+        final Set<Object> other;
+
+        final Map<String, Long> countsByType = new TreeMap<>();
+        final Map<String, Long> bytesByType = new TreeMap<>();
+        long totalBytes, sharedBytes;
+        int maxDepth;
+
+        // Containers, in pre-order
+        int nodes = 0;
+        int[] parents = new int[16];
+        Object[] keys = new Object[16];
+        long[] sizes = new long[16];
+
+        // Children of the root, for a parallel walk
+        final List<Object> rootChildren = new ArrayList<>();
+        final List<Object> rootChildKeys = new ArrayList<>();
+
+        // The stack
+        int top = 0;
+        Object[] stackValues = new Object[16];
+        Object[] stackKeys = new Object[16];
+        int[] stackParents = new int[16];
+        int[] stackDepths = new int[16];
+
+        Walk(Set<Object> other) {
+            this.other = other;
+        }
+
+        void walk(Object start, Object key, int parent, int depth) {
+            push(start, key, parent, depth);
+            drain();
+        }
+
+        /**
+         * Counts the root, and collects its children instead of walking them.
+         */
+        void visitRoot(Object root) {
+            visit(root, null, -1, 0, true);
+            drain();
+        }
+
+        private void drain() {
+            while (top > 0) {
+                top--;
+                Object value = stackValues[top];
+                Object k = stackKeys[top];
+                stackValues[top] = stackKeys[top] = null;
+                visit(value, k, stackParents[top], stackDepths[top], false);
+            }
+        }
+
+        private void visit(Object value, Object key, int parent, int depth, boolean collectChildren) {
+            if (value == null || seen.put(value, Boolean.TRUE) != null) {
+                return;
+            }
+            long bytes = count(value, 1);
+            maxDepth = Math.max(maxDepth, depth);
+            if (value instanceof Stuff) {
+                Object storage = ((Stuff) value).sharedStorage();
+                if (storage != null && seen.put(storage, Boolean.TRUE) == null) {
+                    bytes += count(storage, 1);
+                }
+            }
+
+            if (!Stuff.isMapLike(value) && !Stuff.isListLike(value)) {
+                if (parent >= 0) {
+                    sizes[parent] += bytes;
+                }
+                return;
+            }
+
+            int self = addNode(parent, key, bytes);
+            if (Stuff.isMapLike(value)) {
+                // Pushed in reverse, so that shared subtrees are attributed to the first path in iteration order
+                Object[] entries = new Object[Stuff.sizeOf(value) * 2];
+                int n = 0;
+                if (value instanceof Stuff) {
+                    for (Entry e : (Stuff) value) {
+                        entries[n++] = e.getKey();
+                        entries[n++] = e.getValue();
+                    }
+                } else {
+                    for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                        entries[n++] = e.getKey();
+                        entries[n++] = e.getValue();
+                    }
+                }
+                for (int i = n - 2; i >= 0; i -= 2) {
+                    push(entries[i], entries[i], self, depth + 1);
+                    child(entries[i + 1], entries[i], self, depth, collectChildren);
+                }
+            } else {
+                int size = Stuff.sizeOf(value);
+                for (int i = size - 1; i >= 0; i--) {
+                    child(Stuff.getRawFrom(value, i, null), i, self, depth, collectChildren);
+                }
+            }
+        }
+
+        private void child(Object value, Object key, int parent, int depth, boolean collect) {
+            if (collect) {
+                rootChildren.add(value);
+                rootChildKeys.add(key);
+            } else {
+                push(value, key, parent, depth + 1);
+            }
+        }
+
+        private long count(Object value, int sign) {
+            long bytes = shallowBytes(value);
+            String type = typeOf(value);
+            countsByType.merge(type, (long) sign, Long::sum);
+            bytesByType.merge(type, sign * bytes, Long::sum);
+            totalBytes += sign * bytes;
+            if (other != null && other.contains(value)) {
+                sharedBytes += sign * bytes;
+            }
+            return bytes;
+        }
+
+        private int addNode(int parent, Object key, long bytes) {
+            if (nodes == parents.length) {
+                parents = Arrays.copyOf(parents, nodes * 2);
+                keys = Arrays.copyOf(keys, nodes * 2);
+                sizes = Arrays.copyOf(sizes, nodes * 2);
+            }
+            parents[nodes] = parent;
+            keys[nodes] = key;
+            sizes[nodes] = bytes;
+            return nodes++;
+        }
+
+        private void push(Object value, Object key, int parent, int depth) {
+            if (top == stackValues.length) {
+                stackValues = Arrays.copyOf(stackValues, top * 2);
+                stackKeys = Arrays.copyOf(stackKeys, top * 2);
+                stackParents = Arrays.copyOf(stackParents, top * 2);
+                stackDepths = Arrays.copyOf(stackDepths, top * 2);
+            }
+            stackValues[top] = value;
+            stackKeys[top] = key;
+            stackParents[top] = parent;
+            stackDepths[top] = depth;
+            top++;
+        }
+
+        /**
+         * Adds a walk of one of the root's children, taking back anything this walk (or an
+         * earlier child's) already counted.  Leaf children of the root are added to its size.
+         */
+        void absorb(Walk child) {
+            for (Object value : child.seen.keySet()) {
+                if (seen.put(value, Boolean.TRUE) != null) {
+                    count(value, -1);
+                }
+            }
+            for (Map.Entry<String, Long> e : child.countsByType.entrySet()) {
+                countsByType.merge(e.getKey(), e.getValue(), Long::sum);
+            }
+            for (Map.Entry<String, Long> e : child.bytesByType.entrySet()) {
+                bytesByType.merge(e.getKey(), e.getValue(), Long::sum);
+            }
+            totalBytes += child.totalBytes;
+            sharedBytes += child.sharedBytes;
+            maxDepth = Math.max(maxDepth, child.maxDepth);
+
+            int offset = nodes;
+            for (int i = 0; i < child.nodes; i++) {
+                int parent = child.parents[i];
+                addNode(parent < 0 ? 0 : parent + offset, child.keys[i], child.sizes[i]);
+            }
+            if (child.nodes == 0) {
+                sizes[0] += child.totalBytes;
+            }
+        }
+
+        /**
+         * Sums subtree sizes into their parents, and returns the largest subtrees below the root.
+         */
+        Map<Path, Long> largest(int n) {
+            long[] retained = Arrays.copyOf(sizes, nodes);
+            for (int i = nodes - 1; i > 0; i--) {
+                if (parents[i] >= 0) {
+                    retained[parents[i]] += retained[i];
+                }
+            }
+
+            PriorityQueue<Integer> heap = new PriorityQueue<>(n + 1, Comparator.comparingLong(i -> retained[i]));
+            for (int i = 1; i < nodes; i++) {
+                heap.add(i);
+                if (heap.size() > n) {
+                    heap.poll();
+                }
+            }
+            List<Integer> biggest = new ArrayList<>(heap);
+            biggest.sort(Comparator.comparingLong((Integer i) -> retained[i]).reversed());
+
+            Map<Path, Long> result = new LinkedHashMap<>();
+            for (int i : biggest) {
+                result.put(pathOf(i), retained[i]);
+            }
+            return result;
+        }
+
+        private Path pathOf(int node) {
+            LinkedList<Object> path = new LinkedList<>();
+            for (int i = node; i > 0; i = parents[i]) {
+                path.addFirst(keys[i]);
+            }
+            return new Path(path);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package unitard;
+
+import java.util.*;
+
+/**
+ * Decides how two Stuff trees are combined by Stuff.merge().
+ *
+ * Maps are always merged key by key.  Where both sides have a leaf (or values of different
+ * shapes) one side wins; lists are replaced, concatenated or merged index by index.  Resolvers
+ * registered for a specific path override all of this at that path.
+ */
+public final class MergePolicy {
+
+    public enum Lists {
+        /** The winning side's list replaces the other. */
+        REPLACE,
+        /** The right list is appended to the left. */
+        CONCAT,
+        /** Elements at the same index are merged; the longer list's tail is kept. */
+        BY_INDEX
+    }
+
+    /**
+     * Resolves a conflict at a path; either side may be missing, in which case it is null.
+     */
+    public interface Resolver {
+        Object resolve(Path path, Object left, Object right);
+    }
+
+    public static final MergePolicy RIGHT_WINS = new MergePolicy(true, Lists.REPLACE, Collections.emptyMap());
+    public static final MergePolicy LEFT_WINS = new MergePolicy(false, Lists.REPLACE, Collections.emptyMap());
+
+    final boolean rightWins;
+    final Lists lists;
+    final Map<Path, Resolver> resolvers;
+
+    private MergePolicy(boolean rightWins, Lists lists, Map<Path, Resolver> resolvers) {
+        this.rightWins = rightWins;
+        this.lists = lists;
+        this.resolvers = resolvers;
+    }
+
+    public MergePolicy withLists(Lists lists) {
+        return new MergePolicy(rightWins, lists, resolvers);
+    }
+
+    public MergePolicy withResolver(Path path, Resolver resolver) {
+        Map<Path, Resolver> newResolvers = new HashMap<>(resolvers);
+        newResolvers.put(path, resolver);
+        return new MergePolicy(rightWins, lists, Collections.unmodifiableMap(newResolvers));
+    }
+
+    @Override
+    public String toString() {
+        return "MergePolicy(" + (rightWins ? "right" : "left") + " wins, lists " + lists
+                + (resolvers.isEmpty() ? "" : ", resolvers at " + resolvers.keySet()) + ")";
+    }
+}
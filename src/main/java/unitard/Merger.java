@@ -0,0 +1,203 @@
+package unitard;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Carries out a single Stuff.merge().
+ *
+ * Each node on the merged spine is rebuilt at most once, directly into a fresh map or list that
+ * is handed to the new Stuff without a further copy.  Subtrees present on only one side, or that
+ * merge back to exactly what one side already had, are returned by identity.  Wide maps and long
+ * lists merge their children on the common fork-join pool.
+ */
+final class Merger {
+
+    private static final int PARALLEL_THRESHOLD = 2048;
+
+    private static final Object MISSING = new Object();
+
+    private final MergePolicy policy;
+    private final boolean trackPaths;
+
+    Merger(MergePolicy policy) {
+        this.policy = policy;
+        this.trackPaths = !policy.resolvers.isEmpty();
+    }
+
+    /**
+     * @param path only tracked when the policy has resolvers; null otherwise.
+     */
+    Object merge(Object left, Object right, Path path) {
+        if (trackPaths) {
+            MergePolicy.Resolver resolver = policy.resolvers.get(path);
+            if (resolver != null) {
+                return resolver.resolve(path, left, right);
+            }
+        }
+        if (left == right) {
+            return left;
+        } else if (Stuff.isMapLike(left) && Stuff.isMapLike(right)) {
+            return mergeMaps(left, right, path);
+        } else if (Stuff.isListLike(left) && Stuff.isListLike(right)) {
+            return mergeLists(left, right, path);
+        }
+        return policy.rightWins ? right : left;
+    }
+
+    private Object mergeMaps(Object left, Object right, Path path) {
+        List<Object> rightKeys = new ArrayList<>();
+        List<Object> rightValues = new ArrayList<>();
+        forEachEntry(right, (k, v) -> {
+            rightKeys.add(k);
+            rightValues.add(v);
+        });
+
+        int n = rightKeys.size();
+        Object[] leftValues = new Object[n];
+        Object[] merged = new Object[n];
+        IntStream indices = IntStream.range(0, n);
+        (n >= PARALLEL_THRESHOLD ? indices.parallel() : indices).forEach(i -> {
+            Object key = rightKeys.get(i);
+            Object l = Stuff.getRawFrom(left, key, MISSING);
+            leftValues[i] = l;
+            merged[i] = l == MISSING
+                    ? onlyOneSide(null, rightValues.get(i), childPath(path, key))
+                    : merge(l, rightValues.get(i), childPath(path, key));
+        });
+
+        int leftSize = Stuff.sizeOf(left);
+        boolean sameAsLeft = true, sameAsRight = leftSize <= n;
+        for (int i = 0; i < n; i++) {
+            sameAsLeft &= merged[i] == leftValues[i];
+            sameAsRight &= merged[i] == rightValues.get(i) && leftValues[i] != MISSING;
+        }
+        if (sameAsRight && leftSize == n && !sameAsLeft) {
+            return right;
+        }
+
+        if (Stuff.isWholeSortedMap(left)) {
+            return mergeIntoSorted((Stuff) left, right, rightKeys, leftValues, merged, path);
+        }
+
+        Map<Object, Object> result = new HashMap<>();
+        forEachEntry(left, (k, v) -> result.put(k, v));
+        if (trackPaths) {
+            for (Map.Entry<Object, Object> e : result.entrySet()) {
+                Object value = e.getValue();
+                if (Stuff.getRawFrom(right, e.getKey(), MISSING) == MISSING) {
+                    Object resolved = onlyOneSide(value, null, childPath(path, e.getKey()));
+                    sameAsLeft &= resolved == value;
+                    e.setValue(resolved);
+                }
+            }
+        }
+        if (sameAsLeft) {
+            return left;
+        }
+        for (int i = 0; i < n; i++) {
+            result.put(rightKeys.get(i), merged[i]);
+        }
+        return Stuff.wrapOwnedMapLike(left, result);
+    }
+
+    /**
+     * Puts the merged values into a sorted map's tree, so that the merge costs O(log n) per
+     * changed key and shares the rest of the tree.
+     */
+    private Object mergeIntoSorted(Stuff left, Object right, List<Object> rightKeys, Object[] leftValues,
+                                   Object[] merged, Path path) {
+        Stuff result = left;
+        if (trackPaths) {
+            for (Entry e : left) {
+                if (Stuff.getRawFrom(right, e.getKey(), MISSING) == MISSING) {
+                    Object resolved = onlyOneSide(e.getValue(), null, childPath(path, e.getKey()));
+                    if (resolved != e.getValue()) {
+                        result = result.put(e.getKey(), resolved);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < merged.length; i++) {
+            if (merged[i] != leftValues[i]) {
+                result = result.put(rightKeys.get(i), merged[i]);
+            }
+        }
+        return result;
+    }
+
+    private Object mergeLists(Object left, Object right, Path path) {
+        int leftSize = Stuff.sizeOf(left), rightSize = Stuff.sizeOf(right);
+        switch (policy.lists) {
+            case CONCAT: {
+                if (rightSize == 0) return left;
+                if (leftSize == 0) return right;
+                List<Object> result = new ArrayList<>(leftSize + rightSize);
+                addAll(result, left, leftSize);
+                addAll(result, right, rightSize);
+                return Stuff.wrapOwnedList(result);
+            }
+            case BY_INDEX: {
+                int common = Math.min(leftSize, rightSize);
+                Object[] merged = new Object[common];
+                IntStream indices = IntStream.range(0, common);
+                (common >= PARALLEL_THRESHOLD ? indices.parallel() : indices).forEach(i ->
+                        merged[i] = merge(
+                                Stuff.getRawFrom(left, i, null),
+                                Stuff.getRawFrom(right, i, null),
+                                childPath(path, i)));
+
+                boolean sameAsLeft = leftSize >= rightSize;
+                for (int i = 0; i < common && sameAsLeft; i++) {
+                    sameAsLeft = merged[i] == Stuff.getRawFrom(left, i, null);
+                }
+                if (sameAsLeft) {
+                    return left;
+                }
+
+                List<Object> result = new ArrayList<>(Math.max(leftSize, rightSize));
+                result.addAll(Arrays.asList(merged));
+                Object longer = leftSize > rightSize ? left : right;
+                for (int i = common; i < Math.max(leftSize, rightSize); i++) {
+                    result.add(Stuff.getRawFrom(longer, i, null));
+                }
+                return Stuff.wrapOwnedList(result);
+            }
+            default:
+                return policy.rightWins ? right : left;
+        }
+    }
+
+    private Object onlyOneSide(Object left, Object right, Path path) {
+        if (trackPaths) {
+            MergePolicy.Resolver resolver = policy.resolvers.get(path);
+            if (resolver != null) {
+                return resolver.resolve(path, left, right);
+            }
+        }
+        return left == null ? right : left;
+    }
+
+    private Path childPath(Path path, Object key) {
+        return trackPaths ? path.dot(key) : null;
+    }
+
+    private static void addAll(List<Object> result, Object list, int size) {
+        for (int i = 0; i < size; i++) {
+            result.add(Stuff.getRawFrom(list, i, null));
+        }
+    }
+
+    private static void forEachEntry(Object map, BiConsumer<Object, Object> f) {
+        if (map instanceof Stuff) {
+            for (Entry e : (Stuff) map) {
+                f.accept(e.getKey(), e.getValue());
+            }
+        } else {
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) map).entrySet()) {
+                f.accept(e.getKey(), e.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package unitard;
+
+import java.util.*;
+
+/**
+ * A fixed set of paths, compiled into a trie so that they can all be read from a Stuff in a
+ * single traversal.
+ *
+ * Paths sharing a prefix walk it once, and no Focus or intermediate Hopefully is created along
+ * the way.  Each result is exactly what the corresponding single get() would have returned,
+ * including the path and kind of any failure.
+ *
+ * <pre>
+ * PathSet paths = PathSet.of(
+ *         Path.of("tieredResults", 0, "results", 0, "channel"),
+ *         Path.of("tieredResults", 0, "results", 0, "price"));
+ *
+ * Map&lt;Path, Hopefully&lt;Object&gt;&gt; values = paths.getAll(stuff);
+ * </pre>
+ */
+public final class PathSet {
+
+    private static final Object NOTHING = new Object();
+
+    private static final int ACTUAL = 0, NULL_VALUE = 1, MISSING = 2, WRONG_TYPE = 3;
+
+    private final List<Path> paths;
+    private final Node root;
+
+    private PathSet(List<Path> paths) {
+        this.paths = Collections.unmodifiableList(new ArrayList<>(paths));
+        this.root = new Node(null);
+        for (int i = 0; i < this.paths.size(); i++) {
+            Node node = root;
+            for (Object key : this.paths.get(i)) {
+                node = node.child(key);
+            }
+            node.outputs.add(i);
+        }
+        root.freeze();
+    }
+
+    public static PathSet of(Collection<Path> paths) {
+        return new PathSet(new ArrayList<>(paths));
+    }
+
+    public static PathSet of(Path... paths) {
+        return new PathSet(Arrays.asList(paths));
+    }
+
+    public List<Path> getPaths() {
+        return paths;
+    }
+
+    /**
+     * The value at each path, in the same order as the paths.
+     */
+    public List<Hopefully<Object>> get(Stuff stuff) {
+        return getFrom(stuff);
+    }
+
+    /**
+     * As get(), but starting from any value that may appear in Stuff, such as a raw Map or List.
+     */
+    List<Hopefully<Object>> getFrom(Object value) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Hopefully<Object>[] results = new Hopefully[paths.size()];
+        walk(root, value, ACTUAL, results);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * As getFrom(), but writes the raw value at each path into results, or ifAbsent where
+     * there is none, without creating any Hopefully.
+     */
+    void getRawFrom(Object value, Object[] results, Object ifAbsent) {
+        walkRaw(root, value, results, ifAbsent);
+    }
+
+    /**
+     * The value at each path, keyed by path, in the same order as the paths.
+     */
+    public Map<Path, Hopefully<Object>> getAll(Stuff stuff) {
+        List<Hopefully<Object>> results = get(stuff);
+        Map<Path, Hopefully<Object>> map = new LinkedHashMap<>();
+        for (int i = 0; i < paths.size(); i++) {
+            map.put(paths.get(i), results.get(i));
+        }
+        return map;
+    }
+
+    /**
+     * @param value the value at this node, or for failures the failed value (or its class).
+     */
+    private void walk(Node node, Object value, int kind, Hopefully<Object>[] results) {
+        for (int i : node.outputIndexes) {
+            results[i] = result(value, kind).withPath(paths.get(i));
+        }
+
+        for (Node child : node.children) {
+            if (kind != ACTUAL) {
+                walk(child, value, kind, results);
+            } else if (value == null) {
+                walk(child, null, NULL_VALUE, results);
+            } else if (value instanceof Stuff || value instanceof Map || value instanceof List) {
+                Object childValue = Stuff.getRawFrom(value, child.key, NOTHING);
+                if (childValue == NOTHING) {
+                    walk(child, null, MISSING, results);
+                } else {
+                    walk(child, childValue, ACTUAL, results);
+                }
+            } else {
+                walk(child, value.getClass(), WRONG_TYPE, results);
+            }
+        }
+    }
+
+    private static void walkRaw(Node node, Object value, Object[] results, Object ifAbsent) {
+        for (int i : node.outputIndexes) {
+            results[i] = value;
+        }
+
+        for (Node child : node.children) {
+            Object childValue = value == ifAbsent || value == null ? ifAbsent : Stuff.getRawFrom(value, child.key, NOTHING);
+            walkRaw(child, childValue == NOTHING ? ifAbsent : childValue, results, ifAbsent);
+        }
+    }
+
+    private static Hopefully<Object> result(Object value, int kind) {
+        switch (kind) {
+            case ACTUAL:
+                return Hopefully.notNull(value);
+            case NULL_VALUE:
+                return Hopefully.nullValue();
+            case MISSING:
+                return Hopefully.missing();
+            default:
+                return Hopefully.wrongType((Class<?>) value, List.class);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PathSet" + paths;
+    }
+
+    private static final class Node {
+        final Object key;
+        final List<Integer> outputs = new ArrayList<>(1);
+        private final Map<Object, Node> byKey = new LinkedHashMap<>();
+        int[] outputIndexes;
+        Node[] children;
+
+        Node(Object key) {
+            this.key = key;
+        }
+
+        Node child(Object key) {
+            return byKey.computeIfAbsent(key, Node::new);
+        }
+
+        void freeze() {
+            outputIndexes = outputs.stream().mapToInt(Integer::intValue).toArray();
+            children = byKey.values().toArray(new Node[0]);
+            for (Node child : children) {
+                child.freeze();
+            }
+        }
+    }
+}
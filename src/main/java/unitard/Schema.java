@@ -0,0 +1,179 @@
+package unitard;
+
+import java.util.*;
+
+/**
+ * Immutable description of the shape Stuff is expected to have: value types, nullability,
+ * required and optional keys, nested map shapes and list element types.
+ *
+ * Schemas are compiled once into a Validator, which checks a whole document in a single pass
+ * and reports every failure rather than just the first.
+ *
+ * <pre>
+ * Validator v = Schema.map()
+ *         .required(Path.of("tieredResults", 0, "results"), Schema.listOf(
+ *                 Schema.map()
+ *                         .required("channel", Schema.of(String.class))
+ *                         .optional("someNullThing", Schema.any().nullable())))
+ *         .compile();
+ * </pre>
+ */
+public final class Schema {
+
+    private static final Schema ANY = new Schema(null, false, null, Collections.emptyMap());
+
+    final Class<?> type;
+    final boolean nullable;
+    final Schema elements;
+    final Map<Object, Field> fields;
+
+    static final class Field {
+        final boolean required;
+        final Schema schema;
+
+        Field(boolean required, Schema schema) {
+            this.required = required;
+            this.schema = schema;
+        }
+    }
+
+    private Schema(Class<?> type, boolean nullable, Schema elements, Map<Object, Field> fields) {
+        this.type = type;
+        this.nullable = nullable;
+        this.elements = elements;
+        this.fields = fields;
+    }
+
+    /**
+     * Accepts any non-null value.
+     */
+    public static Schema any() {
+        return ANY;
+    }
+
+    /**
+     * Accepts a non-null value of the given type.  Map.class and List.class also accept Stuff of
+     * the corresponding shape.
+     */
+    public static Schema of(Class<?> type) {
+        return new Schema(type, false, null, Collections.emptyMap());
+    }
+
+    /**
+     * A map; add its keys with required() and optional().
+     */
+    public static Schema map() {
+        return of(Map.class);
+    }
+
+    /**
+     * A list, every element of which must satisfy the element schema.
+     */
+    public static Schema listOf(Schema elementSchema) {
+        return new Schema(List.class, false, elementSchema, Collections.emptyMap());
+    }
+
+    public Schema nullable() {
+        return new Schema(type, true, elements, fields);
+    }
+
+    public Schema required(Object key, Schema schema) {
+        return withField(key, new Field(true, schema));
+    }
+
+    public Schema optional(Object key, Schema schema) {
+        return withField(key, new Field(false, schema));
+    }
+
+    /**
+     * Requires a value at a path below this node.  Paths sharing a prefix are merged, so the
+     * prefix is only walked once during validation.  Throws IllegalArgumentException if the
+     * schema conflicts with one already given for the same value.
+     */
+    public Schema required(Path path, Schema schema) {
+        return atPath(path.getElements(), 0, true, schema);
+    }
+
+    public Schema optional(Path path, Schema schema) {
+        return atPath(path.getElements(), 0, false, schema);
+    }
+
+    public Validator compile() {
+        return new Validator(this);
+    }
+
+    private Schema atPath(List<Object> keys, int from, boolean required, Schema schema) {
+        if (from == keys.size()) {
+            return merge(schema);
+        }
+        Object key = keys.get(from);
+        Field existing = fields.get(key);
+        Schema child = existing == null ? ANY : existing.schema;
+        return withField(key, new Field(required, child.atPath(keys, from + 1, required, schema)));
+    }
+
+    private Schema withField(Object key, Field field) {
+        Map<Object, Field> newFields = new LinkedHashMap<>(fields);
+        Field existing = newFields.get(key);
+        if (existing != null) {
+            field = new Field(existing.required || field.required, existing.schema.merge(field.schema));
+        }
+        newFields.put(key, field);
+        return new Schema(type, nullable, elements, Collections.unmodifiableMap(newFields));
+    }
+
+    /**
+     * Combines two descriptions of the same node: the more specific type wins, keys are unioned,
+     * and null is only allowed if both allow it.  Two types neither of which is a subtype of the
+     * other cannot both hold, so they are refused.
+     */
+    private Schema merge(Schema other) {
+        if (this == ANY) return other;
+        if (other == ANY) return this;
+
+        if (type != null && other.type != null
+                && !type.isAssignableFrom(other.type) && !other.type.isAssignableFrom(type)) {
+            throw new IllegalArgumentException("Conflicting schemas for the same value: " + this + " and " + other);
+        }
+
+        Class<?> newType = type == null ? other.type : type;
+        if (other.type != null && type != null && type.isAssignableFrom(other.type)) {
+            newType = other.type;
+        }
+
+        Schema newElements = elements == null ? other.elements
+                : other.elements == null ? elements
+                : elements.merge(other.elements);
+
+        Schema merged = new Schema(newType, nullable && other.nullable, newElements, fields);
+        for (Map.Entry<Object, Field> e : other.fields.entrySet()) {
+            merged = merged.withField(e.getKey(), e.getValue());
+        }
+        return merged;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(type == null ? "Any" : type.getSimpleName());
+        if (elements != null) {
+            sb.append('<').append(elements).append('>');
+        }
+        if (!fields.isEmpty()) {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<Object, Field> e : fields.entrySet()) {
+                if (!first) {
+                    sb.append(", ");
+                }
+                sb.append(e.getKey()).append(e.getValue().required ? ": " : "?: ").append(e.getValue().schema);
+                first = false;
+            }
+            sb.append('}');
+        }
+        if (nullable) {
+            sb.append('?');
+        }
+        return sb.toString();
+    }
+}
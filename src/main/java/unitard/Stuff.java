@@ -1,8 +1,8 @@
 package unitard;
 
+import java.io.InputStream;
 import java.util.*;
 import java.util.function.*;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -17,19 +17,73 @@ import java.util.stream.Stream;
  */
 public abstract class Stuff implements Iterable<Entry> {
 
-    public static final Stuff EMPTY_MAP = new MapStuff();
-    public static final Stuff EMPTY_LIST = new ListStuff();
+    /**
+     * Maps with up to this many keys, and lists with up to this many elements, are stored in
+     * compact flat arrays rather than a HashMap or ArrayList.
+     */
+    static final int SMALL_MAP_SIZE = 8;
+    static final int SMALL_LIST_SIZE = 4;
+
+    public static final Stuff EMPTY_MAP = new SmallMapStuff(new Object[0]);
+    public static final Stuff EMPTY_LIST = new SmallListStuff(new Object[0]);
 
     public static Stuff fromMap(Map<?, ?> map) {
-        return new MapStuff(getEntriesFromMap(map));
+        if (map.size() <= SMALL_MAP_SIZE) {
+            return SmallMapStuff.fromEntries(map);
+        }
+        return new MapStuff(new HashMap<>(map));
     }
 
     public static Stuff fromList(List<?> list) {
-        return new ListStuff(copyIntoImmutableList(list.stream()));
+        return newList(copyIntoImmutableList(list));
+    }
+
+    /**
+     * An empty map that keeps its keys in the given order, backed by a persistent balanced
+     * tree: put() and remove() cost O(log n), and it supports range(), headMap(), tailMap(),
+     * firstN() and lastN().  Keys the comparator cannot compare are never found in it.
+     */
+    @SuppressWarnings("unchecked")
+    public static Stuff sortedMap(Comparator<?> order) {
+        return new SortedMapStuff(null, (Comparator<Object>) order, KeyRange.ALL);
+    }
+
+    /**
+     * A sorted map (see sortedMap()) with the entries of the given map.
+     */
+    public static Stuff fromMap(Map<?, ?> map, Comparator<?> order) {
+        Stuff sorted = sortedMap(order);
+        for (Map.Entry<?, ?> e : map.entrySet()) {
+            sorted = sorted.put(e.getKey(), e.getValue());
+        }
+        return sorted;
+    }
+
+    /**
+     * Takes ownership of a freshly built map, such as one just produced by a JSON parser,
+     * without copying it.  Nested maps and lists are not copied either; they are read in place
+     * and only converted to Stuff when an edit reaches them.
+     *
+     * The caller must not modify the map, or anything in it, ever again.  Run with
+     * -Dunitard.checkAdopted=true to have every read check that this contract holds.
+     */
+    @SuppressWarnings("unchecked")
+    public static Stuff adopt(Map<?, ?> map) {
+        Map<Object, Object> contents = (Map<Object, Object>) map;
+        return CHECK_ADOPTED ? new CheckedMapStuff(contents) : newMap(contents);
+    }
+
+    /**
+     * Takes ownership of a freshly built list without copying it; see adopt(Map).
+     */
+    @SuppressWarnings("unchecked")
+    public static Stuff adopt(List<?> list) {
+        List<Object> contents = (List<Object>) list;
+        return CHECK_ADOPTED ? new CheckedListStuff(contents) : newList(contents);
     }
 
     public static Stuff listOf(Object... elements) {
-        return new ListStuff(Arrays.asList(elements));
+        return newList(Arrays.asList(elements));
     }
 
     public static Stuff mapOf(Object... keysAndValues) {
@@ -45,7 +99,40 @@ public abstract class Stuff implements Iterable<Entry> {
                 expectingKey = true;
             }
         }
-        return new MapStuff(map);
+        return newMap(map);
+    }
+
+    /**
+     * Streams the elements of the JSON array at the given path, each as its own Stuff, without
+     * loading the whole document.  Only one element is held in memory at a time.  The stream
+     * is empty if there is no array at the path; close it to release the input.
+     */
+    public static Stream<Hopefully<Stuff>> streamElements(InputStream json, Path arrayPath) {
+        return JsonElements.arrayAt(json, arrayPath);
+    }
+
+    /**
+     * Streams each top-level value of newline-delimited JSON as its own Stuff.
+     */
+    public static Stream<Hopefully<Stuff>> streamNdjson(InputStream ndjson) {
+        return JsonElements.rootValues(ndjson);
+    }
+
+    /**
+     * Consumes streamed elements on a fixed pool of threads, parsing at most a couple of elements
+     * ahead of each consumer.  Returns once all elements have been consumed.
+     */
+    public static void forEachParallel(Stream<Hopefully<Stuff>> elements, int threads, Consumer<Hopefully<Stuff>> consumer) {
+        JsonElements.forEachParallel(elements, threads, consumer);
+    }
+
+    /**
+     * Deep-merges another Stuff into this one according to the policy.  Subtrees that only one
+     * side has, or that come out of the merge unchanged, are reused rather than copied.
+     */
+    public Stuff merge(Stuff other, MergePolicy policy) {
+        Object merged = new Merger(policy).merge(this, other, Path.EMPTY);
+        return merged instanceof Stuff ? (Stuff) merged : Hopefully.notNull(merged).asStuff().getOrElse(() -> this);
     }
 
     protected abstract Hopefully<Object> getHere(Object key);
@@ -65,20 +152,140 @@ public abstract class Stuff implements Iterable<Entry> {
         return at(key, keys).get();
     }
 
+    /**
+     * Looks up many paths at once, walking each shared prefix only once.  For repeated use,
+     * compile the paths into a PathSet instead.
+     */
+    public Map<Path, Hopefully<Object>> getAll(Collection<Path> paths) {
+        return PathSet.of(paths).getAll(this);
+    }
+
+    /**
+     * Sorts a list of records by the value at the given path within each one.  Each key is
+     * read once, large lists are sorted in parallel, and equal keys keep their original order.
+     * Returns the first missing, null or wrongly typed key if there is one.
+     */
+    public <K> Hopefully<Stuff> sortBy(Path key, Class<K> keyType, Comparator<? super K> order) {
+        return ListOps.sortBy(this, key, keyType, order);
+    }
+
+    public <K extends Comparable<? super K>> Hopefully<Stuff> sortBy(Path key, Class<K> keyType) {
+        return sortBy(key, keyType, Comparator.naturalOrder());
+    }
+
+    /**
+     * The k records that would come first if the list were sorted by the key, in order, found with
+     * a bounded heap rather than a full sort.  Use a reversed comparator for the k largest.
+     */
+    public <K> Hopefully<Stuff> topK(Path key, Class<K> keyType, Comparator<? super K> order, int k) {
+        return ListOps.topK(this, key, keyType, order, k);
+    }
+
+    /**
+     * Groups a list of records into a map from each distinct key (which may be null) to the list
+     * of records with that key, in their original order.
+     */
+    public Hopefully<Stuff> groupBy(Path key) {
+        return ListOps.groupBy(this, key);
+    }
+
+    /**
+     * A lazy view of this node's children, for chaining filters and transformations that run
+     * in a single pass without building intermediate lists.
+     */
+    public StuffView<Object> view() {
+        return StuffView.of(this);
+    }
+
+    /**
+     * Copies the given fields of every record in the list at a path into a columnar table, for
+     * aggregating them over primitive arrays.  Use Path.EMPTY if this is the list.
+     */
+    public Hopefully<Columns> project(Path list, Path... fields) {
+        return Columns.project(this, list, Arrays.asList(fields));
+    }
+
+    /**
+     * The entries of a sorted map with keys from (inclusive) up to (exclusive), as a view that
+     * shares the map's tree.  Edits to a view only apply within its range.
+     */
+    public Hopefully<Stuff> range(Object from, Object to) {
+        return notSorted();
+    }
+
+    /**
+     * The entries of a sorted map with keys before to (exclusive), as a view.
+     */
+    public Hopefully<Stuff> headMap(Object to) {
+        return notSorted();
+    }
+
+    /**
+     * The entries of a sorted map with keys from (inclusive) onwards, as a view.
+     */
+    public Hopefully<Stuff> tailMap(Object from) {
+        return notSorted();
+    }
+
+    /**
+     * The first n entries of a sorted map, as a view.
+     */
+    public Hopefully<Stuff> firstN(int n) {
+        return notSorted();
+    }
+
+    /**
+     * The last n entries of a sorted map, as a view.
+     */
+    public Hopefully<Stuff> lastN(int n) {
+        return notSorted();
+    }
+
+    private Hopefully<Stuff> notSorted() {
+        return Hopefully.wrongType(getClass(), SortedMap.class);
+    }
+
+    /**
+     * Estimates how much heap this Stuff uses, counting shared subtrees once.
+     */
+    public MemoryStats memoryStats() {
+        return MemoryStats.of(this, null, false);
+    }
+
+    /**
+     * As memoryStats(), also reporting how much of it is shared with another Stuff, such as a
+     * previous version.  A parallel walk is worth it for large trees with many top-level children.
+     */
+    public MemoryStats memoryStats(Stuff sharedWith, boolean parallel) {
+        return MemoryStats.of(this, sharedWith, parallel);
+    }
+
     public Focus at(Object key, Object... keys) {
-        Focus f = new FocusImpl(Optional.empty(), getHere(key), key);
-        return matchArray(keys, f::at, () -> f);
+        return new FocusImpl().at(key, keys);
     }
 
+    /**
+     * A zipper over this Stuff: each focus keeps its parent focus and its own path, so moving
+     * down, up or sideways never goes back to the root.  Edits only touch the focused node;
+     * they are written into each ancestor once, on the way back up.
+     */
     private class FocusImpl implements EditFocus {
-        final Optional<Focus> parent;
-        final Hopefully<Object> target;
+        final FocusImpl parent;
         final Object pathSegment;
+        final Path path;
+        final Hopefully<Object> target;
+        final boolean edited;
+
+        FocusImpl() {
+            this(null, null, Path.EMPTY, Hopefully.notNull(Stuff.this), false);
+        }
 
-        FocusImpl(Optional<Focus> parent, Hopefully<Object> target, Object pathSegment) {
+        FocusImpl(FocusImpl parent, Object pathSegment, Path path, Hopefully<Object> target, boolean edited) {
             this.parent = parent;
             this.pathSegment = pathSegment;
+            this.path = path;
             this.target = target;
+            this.edited = edited;
         }
 
         public Hopefully<Object> get() {
@@ -86,9 +293,9 @@ public abstract class Stuff implements Iterable<Entry> {
         }
 
         public EditFocus at(Object key, Object... keys) {
-            EditFocus f = new FocusImpl(Optional.of(this), get1(key), key);
+            FocusImpl f = child(key);
             for (Object k : keys) {
-                f = f.at(k);
+                f = f.child(k);
             }
             return f;
         }
@@ -109,26 +316,84 @@ public abstract class Stuff implements Iterable<Entry> {
             return refocus(s -> s.insert(index, e));
         }
 
+        public EditFocus up() {
+            if (parent == null) {
+                return this;
+            } else if (!edited) {
+                return parent;
+            }
+            Hopefully<Object> rebuilt = target.isActualValue()
+                    ? parent.target.asStuff().map(s -> s.put(pathSegment, target.unsafeGet()))
+                    : target;
+            return new FocusImpl(parent.parent, parent.pathSegment, parent.path, rebuilt, true);
+        }
+
+        public EditFocus left() {
+            return sibling(-1);
+        }
+
+        public EditFocus right() {
+            return sibling(1);
+        }
+
+        public EditFocus next() {
+            if (parent == null) {
+                return nothingHere();
+            }
+            FocusImpl p = (FocusImpl) up();
+            if (p.isList()) {
+                return pathSegment instanceof Integer ? p.child((Integer) pathSegment + 1) : nothingHere();
+            }
+            Iterator<?> keys = p.target.asStuff().map(Stuff::getKeys).getOrElse(Collections::emptyIterator);
+            while (keys.hasNext()) {
+                if (Objects.equals(keys.next(), pathSegment)) {
+                    return keys.hasNext() ? p.child(keys.next()) : nothingHere();
+                }
+            }
+            return nothingHere();
+        }
+
+        /**
+         * Moves along a list; a map's Integer keys are keys, not positions.
+         */
+        private EditFocus sibling(int offset) {
+            if (parent == null || !(pathSegment instanceof Integer)) {
+                return nothingHere();
+            }
+            FocusImpl p = (FocusImpl) up();
+            return p.isList() ? p.child((Integer) pathSegment + offset) : nothingHere();
+        }
+
+        private boolean isList() {
+            return target.mapOrElse(Stuff::isListLike, () -> false);
+        }
+
+        private EditFocus nothingHere() {
+            return new FocusImpl(parent, pathSegment, path, Hopefully.missing().withPath(path), edited);
+        }
+
         private EditFocus refocus(Function<Stuff, Stuff> f) {
             return new FocusImpl(
                     parent,
+                    pathSegment,
+                    path,
                     target.asStuff().map(f::apply),
-                    pathSegment);
+                    true);
         }
 
         public Path getPath() {
-            return parent
-                    .map(Focus::getPath)
-                    .orElseGet(() -> Path.EMPTY)
-                    .dot(pathSegment);
+            return path;
         }
 
         public Hopefully<Stuff> hopefullyDone() {
-            if (parent.isPresent()) {
-                return target.flatMap(t -> parent.get().put(pathSegment, t).hopefullyDone());
-            } else {
-                return target.map(t -> Stuff.this.put(pathSegment, t));
+            if (!target.isActualValue()) {
+                return target.map(t -> Stuff.this);
             }
+            EditFocus f = this;
+            while (((FocusImpl) f).parent != null) {
+                f = f.up();
+            }
+            return f.get().asStuff();
         }
 
         public Stuff done() {
@@ -139,14 +404,26 @@ public abstract class Stuff implements Iterable<Entry> {
             return "Focus at " + getPath();
         }
 
-        private Hopefully<Object> get1(Object key) {
-            return target.asStuff()
-                    .flatMap(s -> s.get(key))
-                    .withPath(getPath().dot(key));
+        private FocusImpl child(Object key) {
+            Path childPath = path.dot(key);
+            return new FocusImpl(this, key, childPath, get1(key).withPath(childPath), false);
+        }
 
+        private Hopefully<Object> get1(Object key) {
+            return target.flatMap(t -> {
+                if (t instanceof Stuff) {
+                    return ((Stuff) t).getHere(key);
+                } else if (t instanceof Map || t instanceof List) {
+                    Object child = getRawFrom(t, key, NOTHING);
+                    return child == NOTHING ? Hopefully.missing() : Hopefully.notNull(child);
+                }
+                return Hopefully.wrongType(t.getClass(), List.class);
+            });
         }
     }
 
+    private static final Object NOTHING = new Object();
+
     public abstract <K, V> Hopefully<Map<K, V>> asMapOf(Class<K> keyType, Class<V> valueType);
 
     public abstract <E> Hopefully<List<E>> asListOf(Class<E> elementType);
@@ -155,39 +432,192 @@ public abstract class Stuff implements Iterable<Entry> {
 
     public abstract Iterator<Object> getKeys();
 
-    private static class MapStuff extends Stuff {
+    /**
+     * Looks up a direct child without wrapping it in a Hopefully; returns ifMissing when absent.
+     * Intended for internal traversals that visit many nodes.
+     */
+    abstract Object getRaw(Object key, Object ifMissing);
+
+    /**
+     * The same as getRaw() with an Integer key, which lists answer without boxing the index.
+     */
+    Object getRaw(int index, Object ifMissing) {
+        return getRaw((Object) index, ifMissing);
+    }
 
-        private final Map<Object, Object> contents;
+    abstract boolean isMapNode();
+
+    abstract boolean isListNode();
+
+    /**
+     * The estimated size of this node and its own backing storage, not including its children.
+     */
+    abstract long shallowBytes();
+
+    /**
+     * Storage this node may share with other nodes, such as the tree behind a sorted map and its
+     * views, which MemoryStats counts once rather than with each node; or null.
+     */
+    Object sharedStorage() {
+        return null;
+    }
+
+    static boolean isSharedStorage(Object value) {
+        return value instanceof TreeNode;
+    }
+
+    static long sharedStorageBytes(Object storage) {
+        return TreeNode.size((TreeNode) storage) * MemoryStats.object(4, 2);
+    }
+
+    /**
+     * The comparator a sorted map keeps its keys in, or null for anything else.
+     */
+    static Comparator<Object> orderOf(Object value) {
+        return value instanceof SortedMapStuff ? ((SortedMapStuff) value).order : null;
+    }
+
+    /**
+     * Whether a value is a sorted map that is not a view of a range, so that put() can add any
+     * key to it while sharing the rest of its tree.
+     */
+    static boolean isWholeSortedMap(Object value) {
+        return value instanceof SortedMapStuff && ((SortedMapStuff) value).range == KeyRange.ALL;
+    }
+
+    /**
+     * Raw lookup on anything that may appear as a value in Stuff: a Stuff, a java.util.Map or a java.util.List.
+     */
+    static Object getRawFrom(Object container, Object key, Object ifMissing) {
+        if (container instanceof Stuff) {
+            return ((Stuff) container).getRaw(key, ifMissing);
+        } else if (container instanceof Map) {
+            Map<?,?> map = (Map<?,?>) container;
+            Object value = map.get(key);
+            return value != null || map.containsKey(key) ? value : ifMissing;
+        } else if (container instanceof List && key instanceof Integer) {
+            List<?> list = (List<?>) container;
+            int i = (Integer) key;
+            return i >= 0 && i < list.size() ? list.get(i) : ifMissing;
+        }
+        return ifMissing;
+    }
+
+    /**
+     * The same as getRawFrom() with an Integer key, without boxing the index for a list.
+     */
+    static Object getRawFrom(Object container, int index, Object ifMissing) {
+        if (container instanceof Stuff) {
+            return ((Stuff) container).getRaw(index, ifMissing);
+        } else if (container instanceof List) {
+            List<?> list = (List<?>) container;
+            return index >= 0 && index < list.size() ? list.get(index) : ifMissing;
+        }
+        return getRawFrom(container, (Object) index, ifMissing);
+    }
+
+    /**
+     * Wraps a map without copying it.  The caller hands over ownership and must never modify it again.
+     */
+    static Stuff wrapOwnedMap(Map<Object, Object> map) {
+        return newMap(map);
+    }
+
+    /**
+     * Builds a map node from new contents in the same representation as an existing map, so
+     * that a sorted map stays sorted by the same comparator.
+     */
+    static Stuff wrapOwnedMapLike(Object like, Map<Object, Object> map) {
+        Comparator<Object> order = orderOf(like);
+        return order == null ? newMap(map) : fromMap(map, order);
+    }
+
+    /**
+     * Wraps a list without copying it.  The caller hands over ownership and must never modify it again.
+     */
+    static Stuff wrapOwnedList(List<Object> list) {
+        return newList(list);
+    }
+
+    /**
+     * Picks the representation for a map node by its size.  Nodes never change after they are
+     * built, so a map that grows past the small size simply comes out of put() as a MapStuff,
+     * and one that shrinks comes out of remove() small again.
+     */
+    private static Stuff newMap(Map<Object, Object> contents) {
+        return contents.size() <= SMALL_MAP_SIZE ? SmallMapStuff.fromEntries(contents) : new MapStuff(contents);
+    }
+
+    private static Stuff newList(List<Object> contents) {
+        return contents.size() <= SMALL_LIST_SIZE ? new SmallListStuff(contents.toArray()) : new ListStuff(contents);
+    }
 
-        MapStuff() {
-            this(new HashMap<>());
+    /**
+     * The number of children of a Stuff, java.util.Map or java.util.List; zero for anything else.
+     */
+    static int sizeOf(Object container) {
+        if (container instanceof Stuff) {
+            return ((Stuff) container).size();
+        } else if (container instanceof Map) {
+            return ((Map<?, ?>) container).size();
+        } else if (container instanceof List) {
+            return ((List<?>) container).size();
         }
+        return 0;
+    }
+
+    static boolean isMapLike(Object value) {
+        return value instanceof Map || (value instanceof Stuff && ((Stuff) value).isMapNode());
+    }
+
+    static boolean isListLike(Object value) {
+        return value instanceof List || (value instanceof Stuff && ((Stuff) value).isListNode());
+    }
+
+    private static class MapStuff extends Stuff {
+
+        private final Map<Object, Object> contents;
+        private int hash;
 
         private MapStuff(Map<Object,Object> contents) {
             this.contents = contents;
         }
 
-        private MapStuff copy(Consumer<Map<Object,Object>> f) {
+        void checkUnmodified() {}
+
+        long shallowBytes() {
+            return MemoryStats.object(1, 1) + MemoryStats.hashMap(contents.size());
+        }
+
+        private Stuff copy(Consumer<Map<Object,Object>> f) {
+            checkUnmodified();
             Map<Object,Object> newMap = new HashMap<>(contents);
             f.accept(newMap);
-            return new MapStuff(newMap);
+            return newMap(newMap);
         }
 
         public Iterator<Object> getKeys() {
+            checkUnmodified();
             return contents.keySet().stream().iterator();
         }
 
-        private MapStuff(Stream<Entry> entries) {
-            this.contents = new HashMap<>();
+        protected Hopefully<Object> getHere(Object key) {
+            checkUnmodified();
+            return Hopefully.getFromMap(contents, key);
+        }
 
-            for (Iterator<Entry> i = entries.iterator(); i.hasNext();) {
-                Entry e = i.next();
-                contents.put(e.getKey(), e.getValue());
-            }
+        Object getRaw(Object key, Object ifMissing) {
+            checkUnmodified();
+            Object value = contents.get(key);
+            return value != null || contents.containsKey(key) ? value : ifMissing;
         }
 
-        protected Hopefully<Object> getHere(Object key) {
-            return Hopefully.getFromMap(contents, key);
+        boolean isMapNode() {
+            return true;
+        }
+
+        boolean isListNode() {
+            return false;
         }
 
         public Stuff remove(Object key) {
@@ -207,23 +637,28 @@ public abstract class Stuff implements Iterable<Entry> {
         }
 
         public int size() {
+            checkUnmodified();
             return contents.size();
         }
 
         public <K, V> Hopefully<Map<K, V>> asMapOf(Class<K> keyType, Class<V> valueType) {
+            checkUnmodified();
             return Hopefully.notNull(contents).asMapOf(keyType, valueType);
         }
 
         public boolean isEmpty() {
+            checkUnmodified();
             return contents.isEmpty();
         }
 
         public <E> Hopefully<List<E>> asListOf(Class<E> elementType) {
+            checkUnmodified();
             return Hopefully.notNull(contents).asListOf(elementType);
         }
 
         @Override
         public Iterator<Entry> iterator() {
+            checkUnmodified();
             return new Iterator<Entry>() {
                 Iterator<Map.Entry<Object, Object>> it = contents.entrySet().iterator();
 
@@ -240,20 +675,30 @@ public abstract class Stuff implements Iterable<Entry> {
         @Override
         public boolean equals(Object o) {
             if (o == this) return true;
+            checkUnmodified();
             if (o != null && o instanceof MapStuff) {
                 MapStuff ms = (MapStuff)o;
+                ms.checkUnmodified();
                 return ms.contents.equals(contents);
             }
-            return false;
+            return o instanceof Stuff && mapNodesEqual(this, (Stuff) o);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(contents);
+            checkUnmodified();
+            // Contents never change, so the structural hash is computed at most once
+            int h = hash;
+            if (h == 0) {
+                h = Objects.hash(contents);
+                hash = h;
+            }
+            return h;
         }
 
         @Override
         public String toString() {
+            checkUnmodified();
             StringBuilder sb = new StringBuilder();
             sb.append('{');
 
@@ -273,26 +718,28 @@ public abstract class Stuff implements Iterable<Entry> {
 
     private static class ListStuff extends Stuff {
         private final List<Object> contents;
-
-        private ListStuff() {
-            this(new ArrayList<>());
-        }
+        private int hash;
 
         private ListStuff(List<Object> contents) {
             this.contents = contents;
         }
 
-        private ListStuff(Stream<Object> elements) {
-            this.contents = elements.collect(Collectors.toList());
+        void checkUnmodified() {}
+
+        long shallowBytes() {
+            return MemoryStats.object(1, 1) + MemoryStats.arrayList(contents.size());
         }
 
-        private ListStuff copy(Consumer<List<Object>> f) {
-            List<Object> newContents = new ArrayList<>(contents);
+        private Stuff copy(Consumer<List<Object>> f) {
+            checkUnmodified();
+            ArrayList<Object> newContents = new ArrayList<>(contents);
             f.accept(newContents);
-            return new ListStuff(newContents);
+            newContents.trimToSize();
+            return newList(newContents);
         }
 
         protected Hopefully<Object> getHere(Object key) {
+            checkUnmodified();
             if (key instanceof Integer) {
                 return Hopefully.getFromList(contents, (Integer) key);
             } else {
@@ -300,6 +747,25 @@ public abstract class Stuff implements Iterable<Entry> {
             }
         }
 
+        Object getRaw(Object key, Object ifMissing) {
+            checkUnmodified();
+            return isValidIndex(key) ? contents.get((Integer) key) : ifMissing;
+        }
+
+        @Override
+        Object getRaw(int index, Object ifMissing) {
+            checkUnmodified();
+            return index >= 0 && index < contents.size() ? contents.get(index) : ifMissing;
+        }
+
+        boolean isMapNode() {
+            return false;
+        }
+
+        boolean isListNode() {
+            return true;
+        }
+
         public Iterator<Object> getKeys() {
             return Stream.iterate((Object)0, n -> ((Integer)n)+1).iterator();
         }
@@ -330,23 +796,28 @@ public abstract class Stuff implements Iterable<Entry> {
         }
 
         public int size() {
+            checkUnmodified();
             return contents.size();
         }
 
         public boolean isEmpty() {
+            checkUnmodified();
             return contents.isEmpty();
         }
 
         public <K, V> Hopefully<Map<K, V>> asMapOf(Class<K> keyType, Class<V> valueType) {
+            checkUnmodified();
             return Hopefully.notNull(new ArrayList<>(contents)).asMapOf(keyType, valueType);
         }
 
         public <E> Hopefully<List<E>> asListOf(Class<E> elementType) {
+            checkUnmodified();
             return Hopefully.notNull(new ArrayList<>(contents)).asListOf(elementType);
         }
 
         @Override
         public Iterator<Entry> iterator() {
+            checkUnmodified();
             return new Iterator<Entry>() {
                 int i = 0;
                 Iterator<Object> it = contents.iterator();
@@ -364,20 +835,29 @@ public abstract class Stuff implements Iterable<Entry> {
         @Override
         public boolean equals(Object o) {
             if (o == this) return true;
+            checkUnmodified();
             if (o != null && o instanceof ListStuff) {
                 ListStuff ms = (ListStuff)o;
+                ms.checkUnmodified();
                 return ms.contents.equals(contents);
             }
-            return false;
+            return o instanceof Stuff && listNodesEqual(this, (Stuff) o);
         }
 
         @Override
         public int hashCode() {
-            return contents.hashCode();
+            checkUnmodified();
+            int h = hash;
+            if (h == 0) {
+                h = contents.hashCode();
+                hash = h;
+            }
+            return h;
         }
 
         @Override
         public String toString() {
+            checkUnmodified();
             return contents.toString();
         }
 
@@ -398,56 +878,871 @@ public abstract class Stuff implements Iterable<Entry> {
         }
     }
 
-    private static Stream<Entry> getEntriesFromMap(Map<?, ?> map) {
-        return map.entrySet().stream().map(Entry::fromMapEntry);
-    }
+    /**
+     * An adopted map that checks, on every read, that its contents still hash the same as when
+     * it was adopted.  Only used when unitard.checkAdopted is set, since the check is O(n).
+     */
+    private static final class CheckedMapStuff extends MapStuff {
+        private final Map<Object, Object> adopted;
+        private final int adoptedHash;
+
+        CheckedMapStuff(Map<Object, Object> contents) {
+            super(contents);
+            this.adopted = contents;
+            this.adoptedHash = contents.hashCode();
+        }
 
-    private static Object copyIfNecessary(Object candidate) {
-        Optional<Object> a = describeIfMap(candidate).map(Stuff::copyIntoImmutableMap);
-        Optional<Object> b = describeIfList(candidate).map(Stuff::copyIntoImmutableList);
-        return a.orElse(b.orElse(candidate));
-    }
+        @Override
+        long shallowBytes() {
+            return super.shallowBytes() + MemoryStats.REFERENCE + MemoryStats.INT;
+        }
 
-    private static Map<Object, Object> copyIntoImmutableMap(Stream<Entry> oldEntries) {
-        Map<Object,Object> map = new HashMap<>();
-        for (Iterator<Entry> i = oldEntries.iterator(); i.hasNext();) {
-            Entry e = i.next();
-            map.put(e.getKey(), copyIfNecessary(e.getValue()));
+        @Override
+        void checkUnmodified() {
+            if (adopted.hashCode() != adoptedHash) {
+                throw new ConcurrentModificationException("Adopted map was modified after Stuff.adopt()");
+            }
         }
-        return map;
     }
 
-    private static List<Object> copyIntoImmutableList(Stream<?> oldElements) {
-        return new ArrayList<>(oldElements
-                .map(Stuff::copyIfNecessary)
-                .collect(Collectors.toList()));
-    }
+    private static final class CheckedListStuff extends ListStuff {
+        private final List<Object> adopted;
+        private final int adoptedHash;
+
+        CheckedListStuff(List<Object> contents) {
+            super(contents);
+            this.adopted = contents;
+            this.adoptedHash = contents.hashCode();
+        }
+
+        @Override
+        long shallowBytes() {
+            return super.shallowBytes() + MemoryStats.REFERENCE + MemoryStats.INT;
+        }
 
-    private static Optional<Stream<Object>> describeIfList(Object root) {
-        return Hopefully.notNull(root)
-                .asListOf(Object.class)
-                .map(List::stream)
-                .toOptional();
+        @Override
+        void checkUnmodified() {
+            if (adopted.hashCode() != adoptedHash) {
+                throw new ConcurrentModificationException("Adopted list was modified after Stuff.adopt()");
+            }
+        }
     }
 
-    private static Optional<Stream<Entry>> describeIfMap(Object root) {
-        return Hopefully.notNull(root)
-                .as(Map.class)
-                .map(Stuff::getEntriesFromMap).toOptional();
+    /**
+     * A map of at most SMALL_MAP_SIZE keys, stored as alternating keys and values in one exact-size
+     * array and searched linearly.  For a handful of keys this is both smaller and faster than
+     * hashing.
+     */
+    private static final class SmallMapStuff extends Stuff {
+        private final Object[] keysAndValues;
+        private int hash;
+
+        private SmallMapStuff(Object[] keysAndValues) {
+            this.keysAndValues = keysAndValues;
+        }
+
+        long shallowBytes() {
+            return MemoryStats.object(1, 1) + MemoryStats.array(keysAndValues.length, MemoryStats.REFERENCE);
+        }
+
+        static SmallMapStuff fromEntries(Map<?, ?> map) {
+            Object[] kvs = new Object[map.size() * 2];
+            int i = 0;
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                kvs[i++] = e.getKey();
+                kvs[i++] = e.getValue();
+            }
+            return new SmallMapStuff(kvs);
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < keysAndValues.length; i += 2) {
+                if (Objects.equals(keysAndValues[i], key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private Map<Object, Object> toHashMap() {
+            Map<Object, Object> map = new HashMap<>();
+            for (int i = 0; i < keysAndValues.length; i += 2) {
+                map.put(keysAndValues[i], keysAndValues[i + 1]);
+            }
+            return map;
+        }
+
+        protected Hopefully<Object> getHere(Object key) {
+            int i = indexOf(key);
+            Hopefully<Object> result = i < 0 ? Hopefully.missing() : Hopefully.notNull(keysAndValues[i + 1]);
+            return result.withPath(Path.of(key));
+        }
+
+        Object getRaw(Object key, Object ifMissing) {
+            int i = indexOf(key);
+            return i < 0 ? ifMissing : keysAndValues[i + 1];
+        }
+
+        boolean isMapNode() {
+            return true;
+        }
+
+        boolean isListNode() {
+            return false;
+        }
+
+        public Stuff remove(Object key) {
+            int i = indexOf(key);
+            if (i < 0) {
+                return this;
+            }
+            Object[] kvs = new Object[keysAndValues.length - 2];
+            System.arraycopy(keysAndValues, 0, kvs, 0, i);
+            System.arraycopy(keysAndValues, i + 2, kvs, i, keysAndValues.length - i - 2);
+            return new SmallMapStuff(kvs);
+        }
+
+        public Stuff put(Object key, Object value) {
+            int i = indexOf(key);
+            if (i >= 0) {
+                Object[] kvs = keysAndValues.clone();
+                kvs[i + 1] = value;
+                return new SmallMapStuff(kvs);
+            } else if (size() < SMALL_MAP_SIZE) {
+                Object[] kvs = Arrays.copyOf(keysAndValues, keysAndValues.length + 2);
+                kvs[keysAndValues.length] = key;
+                kvs[keysAndValues.length + 1] = value;
+                return new SmallMapStuff(kvs);
+            }
+            Map<Object, Object> map = toHashMap();
+            map.put(key, value);
+            return new MapStuff(map);
+        }
+
+        public Stuff add(Object e) {
+            return this;
+        }
+
+        public Stuff insert(int index, Object value) {
+            return this;
+        }
+
+        public int size() {
+            return keysAndValues.length / 2;
+        }
+
+        public <K, V> Hopefully<Map<K, V>> asMapOf(Class<K> keyType, Class<V> valueType) {
+            return Hopefully.notNull(toHashMap()).asMapOf(keyType, valueType);
+        }
+
+        public boolean isEmpty() {
+            return keysAndValues.length == 0;
+        }
+
+        public <E> Hopefully<List<E>> asListOf(Class<E> elementType) {
+            return Hopefully.notNull(toHashMap()).asListOf(elementType);
+        }
+
+        public Iterator<Object> getKeys() {
+            return new Iterator<Object>() {
+                int i = 0;
+
+                public boolean hasNext() {
+                    return i < keysAndValues.length;
+                }
+
+                public Object next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Object key = keysAndValues[i];
+                    i += 2;
+                    return key;
+                }
+            };
+        }
+
+        @Override
+        public Iterator<Entry> iterator() {
+            return new Iterator<Entry>() {
+                int i = 0;
+
+                public boolean hasNext() {
+                    return i < keysAndValues.length;
+                }
+
+                public Entry next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Entry e = new Entry(keysAndValues[i], keysAndValues[i + 1]);
+                    i += 2;
+                    return e;
+                }
+            };
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            return o instanceof Stuff && mapNodesEqual(this, (Stuff) o);
+        }
+
+        @Override
+        public int hashCode() {
+            // Matches MapStuff, which hashes as Objects.hash(contents)
+            int h = hash;
+            if (h == 0) {
+                int sum = 0;
+                for (int i = 0; i < keysAndValues.length; i += 2) {
+                    sum += Objects.hashCode(keysAndValues[i]) ^ Objects.hashCode(keysAndValues[i + 1]);
+                }
+                h = 31 + sum;
+                hash = h;
+            }
+            return h;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append('{');
+            for (int i = 0; i < keysAndValues.length; i += 2) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(keysAndValues[i]).append(": ").append(keysAndValues[i + 1]);
+            }
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+
+    /**
+     * A map kept in key order in a persistent AVL tree, or a view of a range of one.  A view
+     * holds the whole tree and a KeyRange; since every tree node knows the size of its subtree,
+     * a view's size, first and last entries are all found in O(log n) without copying.
+     */
+    private static final class SortedMapStuff extends Stuff {
+        private final TreeNode root;
+        private final Comparator<Object> order;
+        private final KeyRange range;
+        private int hash;
+
+        private SortedMapStuff(TreeNode root, Comparator<Object> order, KeyRange range) {
+            this.root = root;
+            this.order = order;
+            this.range = range;
+        }
+
+        long shallowBytes() {
+            // The tree itself is counted once, as shared storage
+            return MemoryStats.object(3, 1) + (range == KeyRange.ALL ? 0 : MemoryStats.object(2, 1));
+        }
+
+        @Override
+        Object sharedStorage() {
+            return root;
+        }
+
+        private boolean contains(Object key) {
+            return range.isAbove(key, order) && range.isBelow(key, order);
+        }
+
+        /**
+         * The number of keys in the whole tree before this view starts.
+         */
+        private int startRank() {
+            return range.hasFrom ? TreeNode.rank(root, range.from, !range.fromInclusive, order) : 0;
+        }
+
+        private int endRank() {
+            return range.hasTo ? TreeNode.rank(root, range.to, range.toInclusive, order) : TreeNode.size(root);
+        }
+
+        private TreeNode find(Object key) {
+            try {
+                return contains(key) ? TreeNode.find(root, key, order) : null;
+            } catch (ClassCastException e) {
+                return null;
+            }
+        }
+
+        private Stuff withRoot(TreeNode newRoot) {
+            return newRoot == root ? this : new SortedMapStuff(newRoot, order, range);
+        }
+
+        private Hopefully<Stuff> view(KeyRange newRange) {
+            return Hopefully.notNull(new SortedMapStuff(root, order, newRange));
+        }
+
+        protected Hopefully<Object> getHere(Object key) {
+            TreeNode node = find(key);
+            Hopefully<Object> result = node == null ? Hopefully.missing() : Hopefully.notNull(node.value);
+            return result.withPath(Path.of(key));
+        }
+
+        Object getRaw(Object key, Object ifMissing) {
+            TreeNode node = find(key);
+            return node == null ? ifMissing : node.value;
+        }
+
+        boolean isMapNode() {
+            return true;
+        }
+
+        boolean isListNode() {
+            return false;
+        }
+
+        public Stuff remove(Object key) {
+            return find(key) == null ? this : withRoot(TreeNode.remove(root, key, order));
+        }
+
+        public Stuff put(Object key, Object value) {
+            try {
+                return contains(key) ? withRoot(TreeNode.put(root, key, value, order)) : this;
+            } catch (ClassCastException e) {
+                return this;
+            }
+        }
+
+        public Stuff add(Object e) {
+            return this;
+        }
+
+        public Stuff insert(int index, Object value) {
+            return this;
+        }
+
+        public int size() {
+            return range == KeyRange.ALL ? TreeNode.size(root) : Math.max(0, endRank() - startRank());
+        }
+
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        @Override
+        public Hopefully<Stuff> range(Object from, Object to) {
+            return view(range.from(from, true, order).to(to, false, order));
+        }
+
+        @Override
+        public Hopefully<Stuff> headMap(Object to) {
+            return view(range.to(to, false, order));
+        }
+
+        @Override
+        public Hopefully<Stuff> tailMap(Object from) {
+            return view(range.from(from, true, order));
+        }
+
+        @Override
+        public Hopefully<Stuff> firstN(int n) {
+            int start = startRank(), end = endRank();
+            if (n >= end - start) {
+                return Hopefully.notNull(this);
+            }
+            return n <= 0 ? Hopefully.notNull(sortedMap(order)) : view(range.to(TreeNode.select(root, start + n - 1).key, true, order));
+        }
+
+        @Override
+        public Hopefully<Stuff> lastN(int n) {
+            int start = startRank(), end = endRank();
+            if (n >= end - start) {
+                return Hopefully.notNull(this);
+            }
+            return n <= 0 ? Hopefully.notNull(sortedMap(order)) : view(range.from(TreeNode.select(root, end - n).key, true, order));
+        }
+
+        private Map<Object, Object> toLinkedHashMap() {
+            Map<Object, Object> map = new LinkedHashMap<>();
+            for (Entry e : this) {
+                map.put(e.getKey(), e.getValue());
+            }
+            return map;
+        }
+
+        public <K, V> Hopefully<Map<K, V>> asMapOf(Class<K> keyType, Class<V> valueType) {
+            return Hopefully.notNull(toLinkedHashMap()).asMapOf(keyType, valueType);
+        }
+
+        public <E> Hopefully<List<E>> asListOf(Class<E> elementType) {
+            return Hopefully.notNull(toLinkedHashMap()).asListOf(elementType);
+        }
+
+        public Iterator<Object> getKeys() {
+            Iterator<Entry> entries = iterator();
+            return new Iterator<Object>() {
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                public Object next() {
+                    return entries.next().getKey();
+                }
+            };
+        }
+
+        @Override
+        public Iterator<Entry> iterator() {
+            // The path to the first node in range; then an in-order walk of size() nodes
+            ArrayDeque<TreeNode> stack = new ArrayDeque<>();
+            for (TreeNode n = root; n != null;) {
+                if (range.isAbove(n.key, order)) {
+                    stack.push(n);
+                    n = n.left;
+                } else {
+                    n = n.right;
+                }
+            }
+            int size = size();
+            return new Iterator<Entry>() {
+                int remaining = size;
+
+                public boolean hasNext() {
+                    return remaining > 0;
+                }
+
+                public Entry next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    TreeNode node = stack.pop();
+                    for (TreeNode n = node.right; n != null; n = n.left) {
+                        stack.push(n);
+                    }
+                    remaining--;
+                    return new Entry(node.key, node.value);
+                }
+            };
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            return o instanceof Stuff && mapNodesEqual(this, (Stuff) o);
+        }
+
+        @Override
+        public int hashCode() {
+            // Matches MapStuff, which hashes as Objects.hash(contents)
+            int h = hash;
+            if (h == 0) {
+                int sum = 0;
+                for (Entry e : this) {
+                    sum += Objects.hashCode(e.getKey()) ^ Objects.hashCode(e.getValue());
+                }
+                h = 31 + sum;
+                hash = h;
+            }
+            return h;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append('{');
+            boolean first = true;
+            for (Entry e : this) {
+                if (!first) {
+                    sb.append(", ");
+                }
+                sb.append(e.getKey()).append(": ").append(e.getValue());
+                first = false;
+            }
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Optional lower and upper bounds on the keys of a sorted map view.
+     */
+    private static final class KeyRange {
+        static final KeyRange ALL = new KeyRange(false, null, false, false, null, false);
+
+        final boolean hasFrom, fromInclusive, hasTo, toInclusive;
+        final Object from, to;
+
+        private KeyRange(boolean hasFrom, Object from, boolean fromInclusive, boolean hasTo, Object to, boolean toInclusive) {
+            this.hasFrom = hasFrom;
+            this.from = from;
+            this.fromInclusive = fromInclusive;
+            this.hasTo = hasTo;
+            this.to = to;
+            this.toInclusive = toInclusive;
+        }
+
+        boolean isAbove(Object key, Comparator<Object> order) {
+            if (!hasFrom) {
+                return true;
+            }
+            int c = order.compare(key, from);
+            return c > 0 || (c == 0 && fromInclusive);
+        }
+
+        boolean isBelow(Object key, Comparator<Object> order) {
+            if (!hasTo) {
+                return true;
+            }
+            int c = order.compare(key, to);
+            return c < 0 || (c == 0 && toInclusive);
+        }
+
+        /**
+         * This range, narrowed to start at a key; it never widens.
+         */
+        KeyRange from(Object key, boolean inclusive, Comparator<Object> order) {
+            if (hasFrom) {
+                int c = order.compare(key, from);
+                if (c < 0 || (c == 0 && !fromInclusive)) {
+                    return this;
+                }
+            }
+            return new KeyRange(true, key, inclusive, hasTo, to, toInclusive);
+        }
+
+        KeyRange to(Object key, boolean inclusive, Comparator<Object> order) {
+            if (hasTo) {
+                int c = order.compare(key, to);
+                if (c > 0 || (c == 0 && !toInclusive)) {
+                    return this;
+                }
+            }
+            return new KeyRange(hasFrom, from, fromInclusive, true, key, inclusive);
+        }
+    }
+
+    /**
+     * A node of a persistent AVL tree.  Edits copy the path from the root to the change and
+     * share everything else.
+     */
+    private static final class TreeNode {
+        final Object key, value;
+        final TreeNode left, right;
+        final int height, size;
+
+        TreeNode(Object key, Object value, TreeNode left, TreeNode right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+            this.size = 1 + size(left) + size(right);
+        }
+
+        static int height(TreeNode n) {
+            return n == null ? 0 : n.height;
+        }
+
+        static int size(TreeNode n) {
+            return n == null ? 0 : n.size;
+        }
+
+        static TreeNode find(TreeNode n, Object key, Comparator<Object> order) {
+            while (n != null) {
+                int c = order.compare(key, n.key);
+                if (c == 0) {
+                    return n;
+                }
+                n = c < 0 ? n.left : n.right;
+            }
+            return null;
+        }
+
+        /**
+         * The number of keys before the given key, or up to and including it.
+         */
+        static int rank(TreeNode n, Object key, boolean inclusive, Comparator<Object> order) {
+            int rank = 0;
+            while (n != null) {
+                int c = order.compare(key, n.key);
+                if (c < 0 || (c == 0 && !inclusive)) {
+                    if (c == 0) {
+                        return rank + size(n.left);
+                    }
+                    n = n.left;
+                } else {
+                    rank += size(n.left) + 1;
+                    if (c == 0) {
+                        return rank;
+                    }
+                    n = n.right;
+                }
+            }
+            return rank;
+        }
+
+        /**
+         * The node with the given number of keys before it.
+         */
+        static TreeNode select(TreeNode n, int index) {
+            while (true) {
+                int leftSize = size(n.left);
+                if (index < leftSize) {
+                    n = n.left;
+                } else if (index == leftSize) {
+                    return n;
+                } else {
+                    index -= leftSize + 1;
+                    n = n.right;
+                }
+            }
+        }
+
+        static TreeNode put(TreeNode n, Object key, Object value, Comparator<Object> order) {
+            if (n == null) {
+                return new TreeNode(key, value, null, null);
+            }
+            int c = order.compare(key, n.key);
+            if (c < 0) {
+                return balance(n.key, n.value, put(n.left, key, value, order), n.right);
+            } else if (c > 0) {
+                return balance(n.key, n.value, n.left, put(n.right, key, value, order));
+            }
+            return n.value == value ? n : new TreeNode(n.key, value, n.left, n.right);
+        }
+
+        static TreeNode remove(TreeNode n, Object key, Comparator<Object> order) {
+            if (n == null) {
+                return null;
+            }
+            int c = order.compare(key, n.key);
+            if (c < 0) {
+                return balance(n.key, n.value, remove(n.left, key, order), n.right);
+            } else if (c > 0) {
+                return balance(n.key, n.value, n.left, remove(n.right, key, order));
+            } else if (n.left == null) {
+                return n.right;
+            } else if (n.right == null) {
+                return n.left;
+            }
+            TreeNode next = n.right;
+            while (next.left != null) {
+                next = next.left;
+            }
+            return balance(next.key, next.value, n.left, removeFirst(n.right));
+        }
+
+        private static TreeNode removeFirst(TreeNode n) {
+            return n.left == null ? n.right : balance(n.key, n.value, removeFirst(n.left), n.right);
+        }
+
+        private static TreeNode balance(Object key, Object value, TreeNode left, TreeNode right) {
+            int hl = height(left), hr = height(right);
+            if (hl > hr + 1) {
+                if (height(left.left) >= height(left.right)) {
+                    return new TreeNode(left.key, left.value, left.left, new TreeNode(key, value, left.right, right));
+                }
+                TreeNode lr = left.right;
+                return new TreeNode(lr.key, lr.value,
+                        new TreeNode(left.key, left.value, left.left, lr.left),
+                        new TreeNode(key, value, lr.right, right));
+            } else if (hr > hl + 1) {
+                if (height(right.right) >= height(right.left)) {
+                    return new TreeNode(right.key, right.value, new TreeNode(key, value, left, right.left), right.right);
+                }
+                TreeNode rl = right.left;
+                return new TreeNode(rl.key, rl.value,
+                        new TreeNode(key, value, left, rl.left),
+                        new TreeNode(right.key, right.value, rl.right, right.right));
+            }
+            return new TreeNode(key, value, left, right);
+        }
+    }
+
+    /**
+     * A list of at most SMALL_LIST_SIZE elements, in an exact-size array with no spare capacity.
+     */
+    private static final class SmallListStuff extends Stuff {
+        private final Object[] elements;
+
+        private SmallListStuff(Object[] elements) {
+            this.elements = elements;
+        }
+
+        long shallowBytes() {
+            return MemoryStats.object(1, 0) + MemoryStats.array(elements.length, MemoryStats.REFERENCE);
+        }
+
+        protected Hopefully<Object> getHere(Object key) {
+            if (key instanceof Integer) {
+                return Hopefully.getFromList(Arrays.asList(elements), (Integer) key);
+            } else {
+                return Hopefully.missing().withPath(Path.of(key));
+            }
+        }
+
+        Object getRaw(Object key, Object ifMissing) {
+            return isValidIndex(key) ? elements[(Integer) key] : ifMissing;
+        }
+
+        @Override
+        Object getRaw(int index, Object ifMissing) {
+            return index >= 0 && index < elements.length ? elements[index] : ifMissing;
+        }
+
+        boolean isMapNode() {
+            return false;
+        }
+
+        boolean isListNode() {
+            return true;
+        }
+
+        public Iterator<Object> getKeys() {
+            return Stream.iterate((Object)0, n -> ((Integer)n)+1).iterator();
+        }
+
+        public Stuff put(Object key, Object value) {
+            if (isValidIndex(key)) {
+                Object[] newElements = elements.clone();
+                newElements[(Integer) key] = value;
+                return new SmallListStuff(newElements);
+            }
+            return this;
+        }
+
+        public Stuff remove(Object key) {
+            if (isValidIndex(key)) {
+                int i = (Integer) key;
+                Object[] newElements = new Object[elements.length - 1];
+                System.arraycopy(elements, 0, newElements, 0, i);
+                System.arraycopy(elements, i + 1, newElements, i, elements.length - i - 1);
+                return new SmallListStuff(newElements);
+            }
+            return this;
+        }
+
+        public Stuff add(Object e) {
+            return insert(elements.length, e);
+        }
+
+        public Stuff insert(int index, Object value) {
+            if (index < 0 || index > elements.length) {
+                return this;
+            }
+            Object[] newElements = new Object[elements.length + 1];
+            System.arraycopy(elements, 0, newElements, 0, index);
+            newElements[index] = value;
+            System.arraycopy(elements, index, newElements, index + 1, elements.length - index);
+            return newList(Arrays.asList(newElements));
+        }
+
+        public int size() {
+            return elements.length;
+        }
+
+        public boolean isEmpty() {
+            return elements.length == 0;
+        }
+
+        public <K, V> Hopefully<Map<K, V>> asMapOf(Class<K> keyType, Class<V> valueType) {
+            return Hopefully.notNull(new ArrayList<>(Arrays.asList(elements))).asMapOf(keyType, valueType);
+        }
+
+        public <E> Hopefully<List<E>> asListOf(Class<E> elementType) {
+            return Hopefully.notNull(new ArrayList<>(Arrays.asList(elements))).asListOf(elementType);
+        }
+
+        @Override
+        public Iterator<Entry> iterator() {
+            return new Iterator<Entry>() {
+                int i = 0;
+
+                public boolean hasNext() {
+                    return i < elements.length;
+                }
+
+                public Entry next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Entry e = new Entry(i, elements[i]);
+                    i++;
+                    return e;
+                }
+            };
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            return o instanceof Stuff && listNodesEqual(this, (Stuff) o);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(elements);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(elements);
+        }
+
+        private boolean isValidIndex(Object o) {
+            return o instanceof Integer && (Integer) o >= 0 && (Integer) o < elements.length;
+        }
+    }
+
+    private static boolean mapNodesEqual(Stuff a, Stuff b) {
+        if (!b.isMapNode() || a.size() != b.size()) {
+            return false;
+        }
+        for (Entry e : a) {
+            Object other = b.getRaw(e.getKey(), NOTHING);
+            if (other == NOTHING || !Objects.equals(e.getValue(), other)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean listNodesEqual(Stuff a, Stuff b) {
+        if (!b.isListNode() || a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!Objects.equals(a.getRaw(i, null), b.getRaw(i, null))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object copyIfNecessary(Object candidate) {
+        if (candidate instanceof Map) {
+            return copyIntoImmutableMap((Map<?, ?>) candidate);
+        } else if (candidate instanceof List) {
+            return copyIntoImmutableList((List<?>) candidate);
+        }
+        return candidate;
+    }
+
+    private static Map<Object, Object> copyIntoImmutableMap(Map<?, ?> oldMap) {
+        Map<Object,Object> map = new HashMap<>(oldMap.size() * 4 / 3 + 1);
+        for (Map.Entry<?, ?> e : oldMap.entrySet()) {
+            map.put(e.getKey(), copyIfNecessary(e.getValue()));
+        }
+        return map;
     }
 
-    private static <X> X matchArray(Object[] array, BiFunction<Object, Object[], X> ifNonEmpty, Supplier<X> ifEmpty) {
-        if (array.length == 0) {
-            return ifEmpty.get();
-        } else {
-            Object head = array[0];
-            int tailLength = array.length - 1;
-            Object[] tail = new Object[tailLength];
-            System.arraycopy(array, 1, tail, 0, tailLength);
-            return ifNonEmpty.apply(head, tail);
+    private static List<Object> copyIntoImmutableList(List<?> oldElements) {
+        List<Object> list = new ArrayList<>(oldElements.size());
+        for (Object o : oldElements) {
+            list.add(copyIfNecessary(o));
         }
+        return list;
     }
 
+    /**
+     * Set the system property unitard.checkAdopted=true to have adopted collections verify, on
+     * every read, that nobody has modified them since they were adopted.
+     */
+    private static final boolean CHECK_ADOPTED = Boolean.getBoolean("unitard.checkAdopted");
 
     private Stuff() {}
 }
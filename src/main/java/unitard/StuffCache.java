@@ -0,0 +1,307 @@
+package unitard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A bounded cache of parsed documents, for JSON that is read over and over, such as reference
+ * data files or repeated upstream responses.
+ *
+ * Documents are keyed by file identity (path, modification time and length), by a SHA-256 hash
+ * of their content, or by any key the caller chooses.  Since Stuff is immutable, one cached
+ * document can be handed to any number of threads.  The cache holds at most maxBytes of
+ * documents, by their estimated retained size, and evicts the least recently used first.
+ * Lookups take no lock: each only stamps its entry with the time, and the stamps are sorted
+ * when storing a document makes room.
+ *
+ * Loading is single-flight: if several threads ask for the same missing key at once, one of
+ * them parses it and the others wait for its result.
+ *
+ * <pre>
+ * StuffCache cache = new StuffCache(256 * 1024 * 1024);
+ * Hopefully&lt;Stuff&gt; rates = cache.get(new File("rates.json"));
+ * </pre>
+ */
+public final class StuffCache {
+
+    /**
+     * Produces a document on a cache miss: a Stuff, or a freshly parsed Map or List, which the
+     * cache adopts without copying.
+     */
+    public interface Loader {
+        Object load() throws IOException;
+    }
+
+    private final long maxBytes;
+    private final ConcurrentMap<Object, Cached> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Object, CompletableFuture<Hopefully<Stuff>>> loading = new ConcurrentHashMap<>();
+    private long bytes = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public StuffCache(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must not be negative: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * The parsed contents of a JSON file.  A file that has been modified since it was cached
+     * is parsed again; its old entry is left to be evicted.  If the file changes while it is
+     * being read, what was read is returned but not cached, as it may not match either version.
+     */
+    public Hopefully<Stuff> get(File file) throws IOException {
+        File absolute = file.getAbsoluteFile();
+        FileKey key = FileKey.of(absolute);
+        return get(key, () -> Json.MAPPER.readValue(absolute, Object.class), () -> key.equals(FileKey.of(absolute)));
+    }
+
+    /**
+     * The parsed contents of some JSON, looked up by a hash of the bytes.
+     */
+    public Hopefully<Stuff> get(byte[] json) throws IOException {
+        return get(new ContentKey(sha256(json)), () -> Json.read(json, 0, json.length));
+    }
+
+    /**
+     * The document cached under the key, loading it if it is not there.  Only documents are
+     * cached: if the loader throws, or returns JSON other than a map or list, the next lookup
+     * tries again.
+     */
+    public Hopefully<Stuff> get(Object key, Loader loader) throws IOException {
+        return get(key, loader, () -> true);
+    }
+
+    /**
+     * As get(key, loader), only caching a loaded document if stillValid says the key still
+     * describes it.
+     */
+    private Hopefully<Stuff> get(Object key, Loader loader, BooleanSupplier stillValid) throws IOException {
+        Hopefully<Stuff> cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        CompletableFuture<Hopefully<Stuff>> mine = new CompletableFuture<>();
+        CompletableFuture<Hopefully<Stuff>> theirs = loading.putIfAbsent(key, mine);
+        if (theirs != null) {
+            Hopefully<Stuff> loaded;
+            try {
+                loaded = await(theirs);
+            } catch (IOException | RuntimeException e) {
+                misses.increment();
+                throw e;
+            }
+            hits.increment();
+            return loaded;
+        }
+
+        try {
+            // Another thread may have finished loading between the lookup and claiming the key
+            cached = lookup(key);
+            if (cached != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+                cached = Json.adopt(loader.load());
+                if (cached.isActualValue() && stillValid.getAsBoolean()) {
+                    store(key, cached.unsafeGet());
+                }
+            }
+            mine.complete(cached);
+            return cached;
+        } catch (Throwable e) {
+            // Waiting threads get the same failure
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * The number of documents cached.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * The estimated retained size of the cached documents.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * The number of lookups answered without loading, including those that waited for another
+     * thread's load of the same key and got its result.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * The number of lookups that had to load, or that waited for another thread's load and
+     * got its failure.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StuffCache(size=%d, bytes=%d/%d, hits=%d, misses=%d, evictions=%d)",
+                size(), getBytes(), maxBytes, getHits(), getMisses(), getEvictions());
+    }
+
+    private Hopefully<Stuff> lookup(Object key) {
+        Cached cached = entries.get(key);
+        if (cached == null) {
+            return null;
+        }
+        cached.lastUsed = System.nanoTime();
+        return cached.value;
+    }
+
+    private void store(Object key, Stuff value) {
+        // Sized outside the lock, as it walks the whole document
+        long size = value.memoryStats().getRetainedBytes();
+        if (size > maxBytes) {
+            return;
+        }
+        synchronized (this) {
+            Cached old = entries.put(key, new Cached(Hopefully.notNull(value), size));
+            bytes += size - (old == null ? 0 : old.size);
+            if (bytes > maxBytes) {
+                evict();
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the rest fit.  Called with the lock held,
+     * which every change to the entries takes.
+     */
+    private void evict() {
+        List<Map.Entry<Object, Cached>> byLastUse = new ArrayList<>(entries.entrySet());
+        // Lookups keep stamping entries, so sort by a copy that holds still
+        for (Map.Entry<Object, Cached> e : byLastUse) {
+            e.getValue().evictionOrder = e.getValue().lastUsed;
+        }
+        byLastUse.sort(Comparator.comparingLong(e -> e.getValue().evictionOrder));
+        for (Iterator<Map.Entry<Object, Cached>> it = byLastUse.iterator(); bytes > maxBytes && it.hasNext();) {
+            Map.Entry<Object, Cached> e = it.next();
+            entries.remove(e.getKey(), e.getValue());
+            bytes -= e.getValue().size;
+            evictions.increment();
+        }
+    }
+
+    private static Hopefully<Stuff> await(CompletableFuture<Hopefully<Stuff>> load) throws IOException {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Cached {
+        final Hopefully<Stuff> value;
+        final long size;
+        volatile long lastUsed = System.nanoTime();
+        /** Only used while evicting, with the lock held. */
+        long evictionOrder;
+
+        Cached(Hopefully<Stuff> value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    private static final class FileKey {
+        private final String path;
+        private final long modified;
+        private final long length;
+
+        FileKey(String path, long modified, long length) {
+            this.path = path;
+            this.modified = modified;
+            this.length = length;
+        }
+
+        static FileKey of(File absolute) {
+            return new FileKey(absolute.getPath(), absolute.lastModified(), absolute.length());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof FileKey) {
+                FileKey other = (FileKey) o;
+                return path.equals(other.path) && modified == other.modified && length == other.length;
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, modified, length);
+        }
+    }
+
+    private static final class ContentKey {
+        private final byte[] digest;
+
+        ContentKey(byte[] digest) {
+            this.digest = digest;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ContentKey && Arrays.equals(digest, ((ContentKey) o).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(digest);
+        }
+    }
+}
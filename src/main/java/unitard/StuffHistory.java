@@ -0,0 +1,370 @@
+package unitard;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Point-in-time history of a document that changes over time.
+ *
+ * Each committed version is stored as the list of path-level changes from the previous one,
+ * in an append-only log file, with a full snapshot every so often.  Any version can be rebuilt
+ * by reading the nearest earlier snapshot and replaying the changes after it, straight out of
+ * a memory-mapped window of the log.  Only the latest version is kept in memory.  Each record
+ * carries a checksum, and is forced to disk before commit() returns.
+ *
+ * Diffing skips any subtree that is the same instance in both versions, so versions produced by
+ * editing the previous one (with put(), Focus or merge()) cost time and disk in proportion to the
+ * edit, not the document.  Lists are diffed after skipping the elements they share at either
+ * end, so adding to or removing from a long list records only the elements added or removed.
+ *
+ * Documents must be JSON-representable: create() and commit() refuse a map key that is not a
+ * string, since it would come back as one.
+ */
+public final class StuffHistory implements Closeable {
+
+    private static final byte SNAPSHOT = 'S', DELTA = 'D';
+    /** Payload length, kind, and the CRC-32 of the kind and payload. */
+    private static final int HEADER = 9;
+    private static final Object NONE = new Object();
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int snapshotEvery;
+
+    private long[] offsets = new long[16];
+    private final BitSet snapshots = new BitSet();
+    private int versions = 0;
+    private long end = 0;
+
+    private Stuff latest;
+
+    private StuffHistory(File file, int snapshotEvery) throws IOException {
+        if (snapshotEvery < 1) {
+            throw new IllegalArgumentException("snapshotEvery must be at least 1: " + snapshotEvery);
+        }
+        this.file = new RandomAccessFile(file, "rw");
+        this.channel = this.file.getChannel();
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    /**
+     * Starts a new history in the given file, with the initial document as version 0.
+     */
+    public static StuffHistory create(File file, Stuff initial, int snapshotEvery) throws IOException {
+        checkKeys(initial, Path.EMPTY);
+        StuffHistory history = new StuffHistory(file, snapshotEvery);
+        history.channel.truncate(0);
+        history.append(SNAPSHOT, Json.write(initial));
+        history.latest = initial;
+        return history;
+    }
+
+    /**
+     * Reopens an existing history.  A partially written or corrupt record, left by a crash, is
+     * discarded along with everything after it.
+     */
+    public static StuffHistory open(File file, int snapshotEvery) throws IOException {
+        StuffHistory history = new StuffHistory(file, snapshotEvery);
+        history.scan();
+        if (history.versions == 0) {
+            history.close();
+            throw new IOException("No versions in " + file);
+        }
+        history.latest = history.version(history.versions - 1);
+        return history;
+    }
+
+    /**
+     * Records the next version, and returns its number once it has been forced to disk.
+     */
+    public synchronized int commit(Stuff next) throws IOException {
+        int version = versions;
+        if (version % snapshotEvery == 0) {
+            checkKeys(next, Path.EMPTY);
+            append(SNAPSHOT, Json.write(next));
+        } else {
+            List<Object> changes = new ArrayList<>();
+            diff(latest, next, Path.EMPTY, changes);
+            append(DELTA, Json.MAPPER.writeValueAsBytes(changes));
+        }
+        latest = next;
+        return version;
+    }
+
+    public synchronized Stuff latest() {
+        return latest;
+    }
+
+    public synchronized int latestVersion() {
+        return versions - 1;
+    }
+
+    /**
+     * Rebuilds the given version from the log.
+     */
+    public synchronized Stuff version(int version) throws IOException {
+        if (version < 0 || version >= versions) {
+            throw new NoSuchElementException("No version " + version + "; latest is " + latestVersion());
+        }
+        int snapshot = snapshots.previousSetBit(version);
+        long from = offsets[snapshot];
+        long to = version + 1 < versions ? offsets[version + 1] : end;
+        MappedByteBuffer log = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+
+        Stuff stuff = Hopefully.notNull(readRecord(log)).asStuff().unsafeGet();
+        for (int v = snapshot + 1; v <= version; v++) {
+            for (Object change : (List<?>) readRecord(log)) {
+                stuff = apply(stuff, (Map<?, ?>) change);
+            }
+        }
+        return stuff;
+    }
+
+    /**
+     * The size of the log, in bytes.
+     */
+    public synchronized long getLogSize() {
+        return end;
+    }
+
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+
+    private void append(byte kind, byte[] payload) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(HEADER + payload.length);
+        record.putInt(payload.length).put(kind).putInt(checksum(kind, payload)).put(payload).flip();
+        while (record.hasRemaining()) {
+            channel.write(record, end + record.position());
+        }
+        channel.force(false);
+        addRecord(kind, end);
+        end += HEADER + payload.length;
+    }
+
+    private void addRecord(byte kind, long offset) {
+        if (versions == offsets.length) {
+            offsets = Arrays.copyOf(offsets, versions * 2);
+        }
+        if (kind == SNAPSHOT) {
+            snapshots.set(versions);
+        }
+        offsets[versions++] = offset;
+    }
+
+    private void scan() throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        long offset = 0;
+        while (offset + HEADER <= size) {
+            readFully(header, offset);
+            int length = header.getInt(0);
+            byte kind = header.get(4);
+            if (length < 0 || offset + HEADER + length > size || (kind != SNAPSHOT && (kind != DELTA || versions == 0))) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, offset + HEADER);
+            if (checksum(kind, payload.array()) != header.getInt(5)) {
+                break;
+            }
+            addRecord(kind, offset);
+            offset += HEADER + length;
+        }
+        end = offset;
+        channel.truncate(end);
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Log ended at " + (offset + buffer.position()));
+            }
+        }
+    }
+
+    private static int checksum(byte kind, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(kind);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Reads the record at the buffer's position; its checksum was checked when it was written
+     * or scanned.
+     */
+    private static Object readRecord(ByteBuffer log) throws IOException {
+        int length = log.getInt();
+        log.get();
+        log.getInt();
+
+        byte[] payload = new byte[length];
+        log.get(payload);
+        return Json.read(payload, 0, length);
+    }
+
+    /**
+     * Appends the changes that turn before into after, as put, insert and remove operations.  Maps and
+     * lists, including the raw ones inside Stuff, are walked in place, so that children shared
+     * by both versions are skipped by identity.  Refuses a map key that is not a string.
+     */
+    private static void diff(Object before, Object after, Path path, List<Object> changes) {
+        if (before == after) {
+            return;
+        }
+        if (Stuff.isMapLike(before) && Stuff.isMapLike(after)) {
+            forEachEntry(after, (key, value) -> {
+                checkKey(key, path);
+                Object old = Stuff.getRawFrom(before, key, NONE);
+                if (old == NONE) {
+                    changes.add(put(path.dot(key), value));
+                } else {
+                    diff(old, value, path.dot(key), changes);
+                }
+            });
+            forEachEntry(before, (key, value) -> {
+                if (Stuff.getRawFrom(after, key, NONE) == NONE) {
+                    changes.add(remove(path.dot(key)));
+                }
+            });
+        } else if (Stuff.isListLike(before) && Stuff.isListLike(after)) {
+            diffLists(before, after, path, changes);
+        } else if (!Objects.equals(before, after)) {
+            changes.add(put(path, after));
+        }
+    }
+
+    /**
+     * Skips the elements two lists share at either end, diffs the rest pairwise, then removes
+     * the elements before has left over or inserts the ones after has.
+     */
+    private static void diffLists(Object before, Object after, Path path, List<Object> changes) {
+        int beforeSize = Stuff.sizeOf(before), afterSize = Stuff.sizeOf(after);
+        int prefix = 0;
+        while (prefix < beforeSize && prefix < afterSize
+                && same(Stuff.getRawFrom(before, prefix, null), Stuff.getRawFrom(after, prefix, null))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < beforeSize - prefix && suffix < afterSize - prefix
+                && same(Stuff.getRawFrom(before, beforeSize - 1 - suffix, null),
+                        Stuff.getRawFrom(after, afterSize - 1 - suffix, null))) {
+            suffix++;
+        }
+        int changedBefore = beforeSize - prefix - suffix, changedAfter = afterSize - prefix - suffix;
+        int paired = Math.min(changedBefore, changedAfter);
+        for (int i = prefix; i < prefix + paired; i++) {
+            diff(Stuff.getRawFrom(before, i, null), Stuff.getRawFrom(after, i, null), path.dot(i), changes);
+        }
+        // From the end, so that each index is still the one in before
+        for (int i = prefix + changedBefore - 1; i >= prefix + paired; i--) {
+            changes.add(remove(path.dot(i)));
+        }
+        for (int i = prefix + paired; i < prefix + changedAfter; i++) {
+            changes.add(insert(path.dot(i), Stuff.getRawFrom(after, i, null)));
+        }
+    }
+
+    /**
+     * Whether two elements are the same subtree, or equal leaves, without comparing the
+     * contents of maps and lists.
+     */
+    private static boolean same(Object a, Object b) {
+        return a == b || (!Stuff.isMapLike(a) && !Stuff.isListLike(a) && Objects.equals(a, b));
+    }
+
+    /**
+     * Throws if any map key in the value is not a string.
+     */
+    private static void checkKeys(Object value, Path path) {
+        if (Stuff.isMapLike(value)) {
+            forEachEntry(value, (key, child) -> {
+                checkKey(key, path);
+                checkKeys(child, path.dot(key));
+            });
+        } else if (Stuff.isListLike(value)) {
+            int size = Stuff.sizeOf(value);
+            for (int i = 0; i < size; i++) {
+                checkKeys(Stuff.getRawFrom(value, i, null), path.dot(i));
+            }
+        }
+    }
+
+    private static void checkKey(Object key, Path path) {
+        if (!(key instanceof String)) {
+            throw new IllegalArgumentException("Map keys must be strings to be stored, but the map at "
+                    + (path.isEmpty() ? "the top" : path) + " has the key " + key
+                    + (key == null ? "" : " (" + key.getClass().getName() + ")"));
+        }
+    }
+
+    private static void forEachEntry(Object map, BiConsumer<Object, Object> f) {
+        if (map instanceof Stuff) {
+            for (Entry e : (Stuff) map) {
+                f.accept(e.getKey(), e.getValue());
+            }
+        } else {
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) map).entrySet()) {
+                f.accept(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private static Map<String, Object> put(Path path, Object value) {
+        checkKeys(value, path);
+        Map<String, Object> change = new LinkedHashMap<>();
+        change.put("put", path.getElements());
+        change.put("value", Json.toPlain(value));
+        return change;
+    }
+
+    private static Map<String, Object> insert(Path path, Object value) {
+        checkKeys(value, path);
+        Map<String, Object> change = new LinkedHashMap<>();
+        change.put("insert", path.getElements());
+        change.put("value", Json.toPlain(value));
+        return change;
+    }
+
+    private static Map<String, Object> remove(Path path) {
+        Map<String, Object> change = new LinkedHashMap<>();
+        change.put("remove", path.getElements());
+        return change;
+    }
+
+    private static Stuff apply(Stuff stuff, Map<?, ?> change) {
+        String op = change.containsKey("put") ? "put" : change.containsKey("insert") ? "insert" : "remove";
+        List<?> keys = (List<?>) change.get(op);
+        Object value = change.get("value");
+
+        if (keys.isEmpty()) {
+            return op.equals("put") ? Hopefully.notNull(value).asStuff().getOrElse(() -> stuff) : stuff;
+        }
+        Object last = keys.get(keys.size() - 1);
+        if (keys.size() == 1) {
+            switch (op) {
+                case "put": return stuff.put(last, value);
+                case "insert": return stuff.insert((Integer) last, value);
+                default: return stuff.remove(last);
+            }
+        }
+        Object[] rest = keys.subList(1, keys.size() - 1).toArray();
+        EditFocus parent = (EditFocus) stuff.at(keys.get(0), rest);
+        switch (op) {
+            case "put": return parent.put(last, value).done();
+            case "insert": return parent.insert((Integer) last, value).done();
+            default: return parent.remove(last).done();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package unitard;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional canonicalising layer for ingesting many similar documents.
+ *
+ * Equal subtrees and equal string or number leaves are stored once: the first one seen is kept
+ * in a weakly referenced table, and every later equal value is replaced by it.  Interned nodes
+ * are themselves Stuff, so equal interned subtrees are identical and compare equal by identity.
+ * Since children are interned first, looking a node up only reads its own keys and values, and
+ * equal() tells two interned nodes apart without reading them at all.  Canonical values are
+ * only held weakly, and drop out of the table once no document uses them.
+ *
+ * Nested maps and lists come out as Stuff rather than java.util collections, so an interned
+ * document compares equal to other interned documents, but not necessarily to one built by
+ * Stuff.fromMap().
+ *
+ * One interner can safely be shared by many ingesting threads.
+ */
+public final class StuffInterner {
+
+    private final ConcurrentMap<WeakKey, WeakKey> table = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    /** The canonical maps and lists, by identity, apart from sorted maps. */
+    private final Set<NodeKey> canonicalNodes = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<Object> collectedNodes = new ReferenceQueue<>();
+
+    private final LongAdder seen = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+
+    public Stuff fromMap(Map<?, ?> map) {
+        return (Stuff) intern(map);
+    }
+
+    public Stuff fromList(List<?> list) {
+        return (Stuff) intern(list);
+    }
+
+    public Stuff intern(Stuff stuff) {
+        return (Stuff) intern((Object) stuff);
+    }
+
+    /**
+     * Returns the canonical instance of a value: maps and lists (including Stuff) are interned
+     * bottom up, strings and numbers directly, and anything else is returned as is.
+     */
+    public Object intern(Object value) {
+        if (Stuff.isMapLike(value)) {
+            return internMap(value);
+        } else if (Stuff.isListLike(value)) {
+            return internList(value);
+        } else if (isInternableLeaf(value)) {
+            return canonical(value);
+        }
+        return value;
+    }
+
+    /**
+     * Whether two values are equal.  Two different maps or lists that this interner returned
+     * are unequal, since it returns one instance per distinct value, so they are not read.  A
+     * sorted map can equal a map with another order, so it is always compared.
+     */
+    public boolean equal(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (a instanceof Stuff && b instanceof Stuff && isCanonical(a) && isCanonical(b)) {
+            return false;
+        }
+        return Objects.equals(a, b);
+    }
+
+    private boolean isCanonical(Object node) {
+        expunge();
+        return canonicalNodes.contains(new NodeKey(node, null));
+    }
+
+    /**
+     * The number of values (nodes and leaves) passed through this interner.
+     */
+    public long getSeen() {
+        return seen.sum();
+    }
+
+    /**
+     * The number of values that were replaced by an equal canonical one.
+     */
+    public long getDeduplicated() {
+        return deduplicated.sum();
+    }
+
+    /**
+     * The fraction of values seen that were duplicates, between 0 and 1.
+     */
+    public double getDedupRatio() {
+        long s = seen.sum();
+        return s == 0 ? 0 : (double) deduplicated.sum() / s;
+    }
+
+    /**
+     * The number of distinct canonical values currently held.
+     */
+    public int size() {
+        expunge();
+        return table.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StuffInterner(size=%d, seen=%d, deduplicated=%d, ratio=%.3f)",
+                size(), getSeen(), getDeduplicated(), getDedupRatio());
+    }
+
+    private Object internMap(Object map) {
+        Map<Object, Object> contents = new HashMap<>();
+        boolean unchanged = map instanceof Stuff;
+        if (map instanceof Stuff) {
+            for (Entry e : (Stuff) map) {
+                unchanged &= putInterned(contents, e.getKey(), e.getValue());
+            }
+        } else {
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) map).entrySet()) {
+                putInterned(contents, e.getKey(), e.getValue());
+            }
+        }
+        return canonical(unchanged ? map : Stuff.wrapOwnedMapLike(map, contents));
+    }
+
+    private boolean putInterned(Map<Object, Object> contents, Object key, Object value) {
+        Object k = intern(key);
+        Object v = intern(value);
+        contents.put(k, v);
+        return k == key && v == value;
+    }
+
+    private Object internList(Object list) {
+        int size = Stuff.sizeOf(list);
+        List<Object> contents = new ArrayList<>(size);
+        boolean unchanged = list instanceof Stuff;
+        for (int i = 0; i < size; i++) {
+            Object element = Stuff.getRawFrom(list, i, null);
+            Object interned = intern(element);
+            unchanged &= interned == element;
+            contents.add(interned);
+        }
+        return canonical(unchanged ? list : Stuff.wrapOwnedList(contents));
+    }
+
+    private Object canonical(Object value) {
+        expunge();
+        seen.increment();
+
+        WeakKey key = new WeakKey(value, collected);
+        while (true) {
+            WeakKey existing = table.putIfAbsent(key, key);
+            if (existing == null) {
+                if (value instanceof Stuff && key.order == null) {
+                    canonicalNodes.add(new NodeKey(value, collectedNodes));
+                }
+                return value;
+            }
+            Object canonical = existing.get();
+            if (canonical != null) {
+                if (canonical != value) {
+                    deduplicated.increment();
+                }
+                return canonical;
+            }
+            // Collected between lookup and use; replace it
+            table.remove(existing, existing);
+        }
+    }
+
+    private void expunge() {
+        for (Object ref; (ref = collected.poll()) != null;) {
+            table.remove(ref, ref);
+        }
+        for (Object ref; (ref = collectedNodes.poll()) != null;) {
+            canonicalNodes.remove(ref);
+        }
+    }
+
+    private static boolean isInternableLeaf(Object value) {
+        return value instanceof String
+                || value instanceof Integer || value instanceof Long || value instanceof Double
+                || value instanceof BigDecimal || value instanceof BigInteger;
+    }
+
+    private static final Object MISSING = new Object();
+
+    /**
+     * Whether two values offered to or held in the table are equal.  Their child maps and lists
+     * are already canonical, so mostly only the top level is read.
+     */
+    private static boolean sameContents(Object a, Object b) {
+        if (!(a instanceof Stuff) || !(b instanceof Stuff)) {
+            return a.equals(b);
+        }
+        Stuff x = (Stuff) a, y = (Stuff) b;
+        if (x.size() != y.size()) {
+            return false;
+        }
+        if (Stuff.isMapLike(x)) {
+            if (!Stuff.isMapLike(y)) {
+                return false;
+            }
+            for (Entry e : x) {
+                Object other = Stuff.getRawFrom(y, e.getKey(), MISSING);
+                if (other == MISSING || !sameChild(e.getValue(), other)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (!Stuff.isListLike(y)) {
+            return false;
+        }
+        for (int i = 0; i < x.size(); i++) {
+            if (!sameChild(Stuff.getRawFrom(x, i, null), Stuff.getRawFrom(y, i, null))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Equal child nodes with the same order are one canonical instance; a sorted map can still
+     * equal a map with another order.
+     */
+    private static boolean sameChild(Object a, Object b) {
+        if (a == b) {
+            return true;
+        } else if (!Stuff.isMapLike(a) && !Stuff.isListLike(a)) {
+            return Objects.equals(a, b);
+        }
+        return !Objects.equals(Stuff.orderOf(a), Stuff.orderOf(b)) && a.equals(b);
+    }
+
+    /**
+     * Weak reference that compares by the equality of its referent, with the hash cached.  A
+     * sorted map only matches maps sorted by the same comparator, which it would equal as a map.
+     */
+    private static final class WeakKey extends WeakReference<Object> {
+        private final int hash;
+        private final Comparator<Object> order;
+
+        WeakKey(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = referent.hashCode();
+            this.order = Stuff.orderOf(referent);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (o instanceof WeakKey) {
+                WeakKey other = (WeakKey) o;
+                Object a = get();
+                Object b = other.get();
+                return hash == other.hash && Objects.equals(order, other.order) && a != null && b != null && sameContents(a, b);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Weak reference that compares by the identity of its referent.
+     */
+    private static final class NodeKey extends WeakReference<Object> {
+        private final int hash;
+
+        NodeKey(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (o instanceof NodeKey) {
+                Object a = get();
+                return a != null && a == ((NodeKey) o).get();
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package unitard;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Loads many JSON files into Stuff at once, for batch jobs that ingest thousands of small
+ * documents.
+ *
+ * Files are read on a pool of I/O threads, which mostly wait on the disk, and parsed on a
+ * separate, smaller pool sized for the CPU.  Parsed maps and lists are adopted as they are,
+ * without copying.  At most maxInFlight files are being read, parsed or waiting to be consumed
+ * at once, so a slow consumer holds back reading rather than filling the heap.
+ *
+ * A file that cannot be read or parsed does not stop the others: its result is missing, with
+ * the reason in getError().  The loader keeps counts and timings across all loads, to help size
+ * the pools: see toString().
+ *
+ * <pre>
+ * try (StuffLoader loader = new StuffLoader(32, 4, 256)) {
+ *     loader.load(files, loaded -&gt; loaded.getStuff().ifActualValue(index::add));
+ * }
+ * </pre>
+ */
+public final class StuffLoader implements Closeable {
+
+    /**
+     * The outcome of loading one file.
+     */
+    public static final class Loaded {
+        private final File file;
+        private final Hopefully<Stuff> stuff;
+        private final IOException error;
+
+        private Loaded(File file, Hopefully<Stuff> stuff, IOException error) {
+            this.file = file;
+            this.stuff = stuff;
+            this.error = error;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * The document; missing if the file could not be read or parsed, and the wrong type if
+         * it holds JSON other than an object or array.
+         */
+        public Hopefully<Stuff> getStuff() {
+            return stuff;
+        }
+
+        /**
+         * Why the file could not be read or parsed, or null.
+         */
+        public IOException getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return file + ": " + (error == null ? stuff : error);
+        }
+    }
+
+    private static final Loaded END = new Loaded(null, null, null);
+
+    private final ExecutorService io;
+    private final ExecutorService cpu;
+    private final int maxInFlight;
+
+    private final LongAdder loaded = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder elapsedNanos = new LongAdder();
+    private final Timings readTimes = new Timings();
+    private final Timings parseTimes = new Timings();
+
+    public StuffLoader(int ioThreads, int cpuThreads, int maxInFlight) {
+        if (ioThreads < 1 || cpuThreads < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Threads and maxInFlight must be at least 1: io=%d, cpu=%d, maxInFlight=%d",
+                    ioThreads, cpuThreads, maxInFlight));
+        }
+        this.io = Executors.newFixedThreadPool(ioThreads, threads("StuffLoader-io-"));
+        this.cpu = Executors.newFixedThreadPool(cpuThreads, threads("StuffLoader-cpu-"));
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Loads every file, returning once each has been passed to the callback.  The callback runs
+     * on the loader's threads, several at once, in whatever order files finish.  If it throws,
+     * the remaining files are still loaded, and the first exception is rethrown at the end.
+     */
+    public void load(Iterable<File> files, Consumer<Loaded> callback) throws InterruptedIOException {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicReference<RuntimeException> failed = new AtomicReference<>();
+        long start = System.nanoTime();
+        try {
+            submit(files.iterator(), inFlight, result -> {
+                try {
+                    callback.accept(result);
+                } catch (RuntimeException e) {
+                    failed.compareAndSet(null, e);
+                } finally {
+                    inFlight.release();
+                }
+            });
+            // Every permit comes back once every file has been delivered
+            inFlight.acquire(maxInFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            elapsedNanos.add(System.nanoTime() - start);
+        }
+        if (failed.get() != null) {
+            throw failed.get();
+        }
+    }
+
+    /**
+     * Loads the files in the background, returning each as it finishes.  Only maxInFlight are
+     * loaded ahead of the consumer.  Close the stream, or read it to the end; closing it early
+     * stops loading the rest, and once close() returns the files are no longer iterated.
+     */
+    public Stream<Loaded> stream(Iterable<File> files) {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        BlockingQueue<Loaded> done = new LinkedBlockingQueue<>();
+        long start = System.nanoTime();
+        AtomicBoolean finished = new AtomicBoolean();
+        Runnable finish = () -> {
+            if (finished.compareAndSet(false, true)) {
+                elapsedNanos.add(System.nanoTime() - start);
+            }
+        };
+
+        Thread feeder = new Thread(() -> {
+            try {
+                submit(files.iterator(), inFlight, done::add);
+                // Every permit comes back once the consumer has taken every file
+                inFlight.acquire(maxInFlight);
+                done.add(END);
+            } catch (InterruptedException e) {
+                // The stream was closed
+            }
+        }, "StuffLoader-feeder");
+        feeder.setDaemon(true);
+        feeder.start();
+
+        Iterator<Loaded> results = new Iterator<Loaded>() {
+            Loaded next;
+
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = done.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for files to load", e);
+                    }
+                    if (next == END) {
+                        finish.run();
+                    } else {
+                        inFlight.release();
+                    }
+                }
+                return next != END;
+            }
+
+            public Loaded next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Loaded result = next;
+                next = null;
+                return result;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                results, Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    feeder.interrupt();
+                    joinUninterruptibly(feeder);
+                    finish.run();
+                });
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads each file on the I/O pool and parses it on the CPU pool, taking a permit first.
+     * Whoever consumes a result returns its permit.
+     */
+    private void submit(Iterator<File> files, Semaphore inFlight, Consumer<Loaded> deliver) throws InterruptedException {
+        while (files.hasNext()) {
+            File file = files.next();
+            inFlight.acquire();
+            run(io, file, deliver, () -> {
+                long readStart = System.nanoTime();
+                byte[] json = Files.readAllBytes(file.toPath());
+                readTimes.add(System.nanoTime() - readStart);
+                bytes.add(json.length);
+                run(cpu, file, deliver, () -> parse(file, json));
+                return null;
+            });
+        }
+    }
+
+    /**
+     * One step in loading a file: returns the result, or null if it has handed the file on to
+     * another step.
+     */
+    private interface Step {
+        Loaded run() throws Exception;
+    }
+
+    /**
+     * Runs a step on a pool.  If the step throws, or the pool rejects it, the file is delivered
+     * as failed instead, so that every file is delivered exactly once and its permit returned.
+     */
+    private void run(Executor pool, File file, Consumer<Loaded> deliver, Step step) {
+        try {
+            pool.execute(() -> {
+                Loaded result;
+                try {
+                    result = step.run();
+                } catch (Throwable e) {
+                    result = failed(file, e);
+                }
+                if (result != null) {
+                    deliver.accept(result);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            deliver.accept(failed(file, e));
+        }
+    }
+
+    private Loaded parse(File file, byte[] json) throws IOException {
+        long parseStart = System.nanoTime();
+        Hopefully<Stuff> stuff = Json.adopt(Json.read(json, 0, json.length));
+        parseTimes.add(System.nanoTime() - parseStart);
+        loaded.increment();
+        return new Loaded(file, stuff, null);
+    }
+
+    private Loaded failed(File file, Throwable e) {
+        loaded.increment();
+        failures.increment();
+        IOException error = e instanceof IOException ? (IOException) e : new IOException("Could not load " + file, e);
+        return new Loaded(file, Hopefully.missing(), error);
+    }
+
+    /**
+     * Stops the loader's threads, abandoning any load still running.
+     */
+    @Override
+    public void close() {
+        io.shutdownNow();
+        cpu.shutdownNow();
+    }
+
+    /**
+     * The number of files loaded, including those that failed.
+     */
+    public long getFiles() {
+        return loaded.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * The number of bytes read from files.
+     */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Files loaded per second of time spent in load() or with a stream open.
+     */
+    public double getFilesPerSecond() {
+        long elapsed = elapsedNanos.sum();
+        return elapsed == 0 ? 0 : getFiles() * 1e9 / elapsed;
+    }
+
+    /**
+     * The time within which the given fraction of file reads finished, such as 0.5 for the
+     * median or 0.99; zero if none have.
+     */
+    public long getReadNanos(double percentile) {
+        return readTimes.percentile(percentile);
+    }
+
+    /**
+     * The time within which the given fraction of successful parses finished.
+     */
+    public long getParseNanos(double percentile) {
+        return parseTimes.percentile(percentile);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "StuffLoader(files=%d, failures=%d, bytes=%d, files/s=%.1f, read p50/p99=%dus/%dus, parse p50/p99=%dus/%dus)",
+                getFiles(), getFailures(), getBytes(), getFilesPerSecond(),
+                getReadNanos(0.5) / 1000, getReadNanos(0.99) / 1000,
+                getParseNanos(0.5) / 1000, getParseNanos(0.99) / 1000);
+    }
+
+    private static ThreadFactory threads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Every recorded duration, kept so that percentiles are exact.  Eight bytes a file is small
+     * next to the documents themselves.
+     */
+    private static final class Timings {
+        private long[] nanos = new long[64];
+        private int count = 0;
+
+        synchronized void add(long duration) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = duration;
+        }
+
+        long percentile(double percentile) {
+            long[] sorted;
+            synchronized (this) {
+                sorted = Arrays.copyOf(nanos, count);
+            }
+            if (sorted.length == 0) {
+                return 0;
+            }
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.min(sorted.length - 1, Math.max(0, rank))];
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package unitard;
+
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A lazy pipeline over the children of a Stuff node, such as the records in a list.
+ *
+ * Steps only describe what to do: nothing is read until a terminal operation (toStuff(),
+ * stream() or fold()) runs, and then every step runs fused, in a single pass, one element at a
+ * time.  take() stops reading the source as soon as it has enough.  Each terminal operation
+ * runs the pipeline again from the start, so a view can be reused.
+ *
+ * Every element is a Hopefully carrying the path it came from, relative to the viewed node.
+ * Steps act on actual values only, so a missing, null or wrongly typed element passes through
+ * them unchanged, and terminal operations report the first failure with its path.
+ *
+ * <pre>
+ * Hopefully&lt;Stuff&gt; prices = stuff.get("tieredResults", 0, "results").asStuff().unsafeGet().view()
+ *         .filter(Path.of("channel"), "buy"::equals)
+ *         .get(Path.of("price"), Integer.class)
+ *         .take(10)
+ *         .toStuff();
+ * </pre>
+ */
+public final class StuffView<A> {
+
+    /**
+     * Pulls the next element, or returns null at the end.
+     */
+    private interface Cursor<A> {
+        Hopefully<A> next();
+    }
+
+    private final Supplier<Cursor<A>> source;
+
+    private StuffView(Supplier<Cursor<A>> source) {
+        this.source = source;
+    }
+
+    /**
+     * The children of a node: the elements of a list, or the values of a map in its iteration
+     * order, each with its index or key as its path.
+     */
+    static StuffView<Object> of(Stuff node) {
+        if (node.isListNode()) {
+            return new StuffView<>(() -> new Cursor<Object>() {
+                final int size = node.size();
+                int i = 0;
+
+                public Hopefully<Object> next() {
+                    if (i >= size) {
+                        return null;
+                    }
+                    int index = i++;
+                    return element(node.getRaw(index, null), Path.of(index));
+                }
+            });
+        }
+        return new StuffView<>(() -> new Cursor<Object>() {
+            final Iterator<Entry> entries = node.iterator();
+
+            public Hopefully<Object> next() {
+                if (!entries.hasNext()) {
+                    return null;
+                }
+                Entry e = entries.next();
+                return element(e.getValue(), Path.of(e.getKey()));
+            }
+        });
+    }
+
+    private static Hopefully<Object> element(Object value, Path path) {
+        return (value == null ? Hopefully.nullValue() : Hopefully.notNull(value)).withPath(path);
+    }
+
+    /**
+     * Keeps the elements whose value matches.  Failures and nulls are kept, so that they are
+     * still reported at the end.
+     */
+    public StuffView<A> filter(Predicate<? super A> predicate) {
+        return new StuffView<>(() -> {
+            Cursor<A> in = source.get();
+            return () -> {
+                for (Hopefully<A> e; (e = in.next()) != null;) {
+                    if (!e.isActualValue() || predicate.test(e.unsafeGet())) {
+                        return e;
+                    }
+                }
+                return null;
+            };
+        });
+    }
+
+    /**
+     * Keeps the elements whose value at a path within them matches.  Elements without a value
+     * at the path are dropped.
+     */
+    public StuffView<A> filter(Path path, Predicate<Object> predicate) {
+        PathSet at = PathSet.of(path);
+        return filter(value -> at.getFrom(value).get(0).mapOrElse(predicate::test, () -> false));
+    }
+
+    /**
+     * Transforms each value, keeping its path.
+     */
+    public <B> StuffView<B> map(Function<? super A, ? extends B> f) {
+        return new StuffView<>(() -> {
+            Cursor<A> in = source.get();
+            return () -> {
+                Hopefully<A> e = in.next();
+                return e == null ? null : e.mapOrElse(
+                        a -> Hopefully.<B>notNull(f.apply(a)).withPath(e.getPath()),
+                        () -> cast(e));
+            };
+        });
+    }
+
+    /**
+     * Replaces each value with the value at a path within it, as the given type.  Where there
+     * is none, the element becomes the failure, with its full path.
+     */
+    public <B> StuffView<B> get(Path path, Class<B> type) {
+        PathSet at = PathSet.of(path);
+        return new StuffView<>(() -> {
+            Cursor<A> in = source.get();
+            return () -> {
+                Hopefully<A> e = in.next();
+                return e == null ? null : e.mapOrElse(
+                        a -> at.getFrom(a).get(0).as(type).withPath(e.getPath().join(path)),
+                        () -> cast(e));
+            };
+        });
+    }
+
+    /**
+     * Replaces each value with all the elements of the view the function returns for it, with
+     * their paths appended to its own.
+     */
+    public <B> StuffView<B> flatMap(Function<? super A, StuffView<B>> f) {
+        return new StuffView<>(() -> {
+            Cursor<A> in = source.get();
+            return new Cursor<B>() {
+                Path outer;
+                Cursor<B> inner;
+
+                public Hopefully<B> next() {
+                    while (true) {
+                        if (inner != null) {
+                            Hopefully<B> b = inner.next();
+                            if (b != null) {
+                                return b.withPath(outer.join(b.getPath()));
+                            }
+                            inner = null;
+                        }
+                        Hopefully<A> e = in.next();
+                        if (e == null) {
+                            return null;
+                        } else if (!e.isActualValue()) {
+                            return cast(e);
+                        }
+                        outer = e.getPath();
+                        inner = f.apply(e.unsafeGet()).source.get();
+                    }
+                }
+            };
+        });
+    }
+
+    /**
+     * Drops every element that is not an actual value.
+     */
+    public StuffView<A> dropFailures() {
+        return new StuffView<>(() -> {
+            Cursor<A> in = source.get();
+            return () -> {
+                for (Hopefully<A> e; (e = in.next()) != null;) {
+                    if (e.isActualValue()) {
+                        return e;
+                    }
+                }
+                return null;
+            };
+        });
+    }
+
+    /**
+     * The first n elements; reading stops once they have been taken.
+     */
+    public StuffView<A> take(int n) {
+        return new StuffView<>(() -> {
+            Cursor<A> in = source.get();
+            int[] taken = {0};
+            return () -> {
+                if (taken[0] >= n) {
+                    return null;
+                }
+                taken[0]++;
+                return in.next();
+            };
+        });
+    }
+
+    /**
+     * All but the first n elements.
+     */
+    public StuffView<A> drop(int n) {
+        return new StuffView<>(() -> {
+            Cursor<A> in = source.get();
+            int[] dropped = {0};
+            return () -> {
+                for (; dropped[0] < n; dropped[0]++) {
+                    if (in.next() == null) {
+                        return null;
+                    }
+                }
+                return in.next();
+            };
+        });
+    }
+
+    /**
+     * Pairs up the elements of two views, stopping at the end of the shorter one.  The result
+     * has the path of this view's element; if either element is a failure, so is the result.
+     */
+    public <B, C> StuffView<C> zip(StuffView<B> other, BiFunction<? super A, ? super B, ? extends C> f) {
+        return new StuffView<>(() -> {
+            Cursor<A> left = source.get();
+            Cursor<B> right = other.source.get();
+            return () -> {
+                Hopefully<A> a = left.next();
+                Hopefully<B> b = a == null ? null : right.next();
+                if (b == null) {
+                    return null;
+                } else if (!a.isActualValue()) {
+                    return cast(a);
+                } else if (!b.isActualValue()) {
+                    return cast(b);
+                }
+                return Hopefully.<C>notNull(f.apply(a.unsafeGet(), b.unsafeGet())).withPath(a.getPath());
+            };
+        });
+    }
+
+    /**
+     * Runs the pipeline, returning every element.  Close the stream, or read it to the end.
+     */
+    public Stream<Hopefully<A>> stream() {
+        Cursor<A> cursor = source.get();
+        Iterator<Hopefully<A>> it = new Iterator<Hopefully<A>>() {
+            Hopefully<A> next = cursor.next();
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public Hopefully<A> next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Hopefully<A> result = next;
+                next = cursor.next();
+                return result;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                it, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Runs the pipeline into a list node, including nulls, or returns the first element that
+     * is missing or of the wrong type.
+     */
+    public Hopefully<Stuff> toStuff() {
+        List<Object> values = new ArrayList<>();
+        Cursor<A> cursor = source.get();
+        for (Hopefully<A> e; (e = cursor.next()) != null;) {
+            if (e.isActualValue()) {
+                values.add(e.unsafeGet());
+            } else if (e.isNull()) {
+                values.add(null);
+            } else {
+                return cast(e);
+            }
+        }
+        return Hopefully.notNull(Stuff.wrapOwnedList(values));
+    }
+
+    /**
+     * Runs the pipeline, combining every value into an accumulator, or returns the first
+     * element that is not an actual value.
+     */
+    public <B> Hopefully<B> fold(B zero, BiFunction<B, ? super A, B> f) {
+        B acc = zero;
+        Cursor<A> cursor = source.get();
+        for (Hopefully<A> e; (e = cursor.next()) != null;) {
+            if (!e.isActualValue()) {
+                return cast(e);
+            }
+            acc = f.apply(acc, e.unsafeGet());
+        }
+        return Hopefully.notNull(acc);
+    }
+
+    /**
+     * Re-types a failed element, which holds no value.
+     */
+    @SuppressWarnings("unchecked")
+    private static <B> Hopefully<B> cast(Hopefully<?> failed) {
+        return (Hopefully<B>) failed;
+    }
+}
@@ -0,0 +1,347 @@
+package unitard;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes Stuff as JSON, remembering the encoded bytes of the maps and lists inside it, so that
+ * writing an edited version again only encodes what the edit rebuilt.
+ *
+ * Editing Stuff (with put(), Focus or merge()) rebuilds the nodes on the path to the change and
+ * shares every other subtree with the previous version.  Since those subtrees are immutable,
+ * their bytes can be looked up by identity and copied into the output as they are, so writing
+ * the new version costs time in proportion to the edit, plus copying the unchanged bytes.
+ *
+ * Encoded subtrees are held against the weakly referenced node, and dropped when the node is
+ * collected, or when the total exceeds maxBytes, least recently used first.  Each level of
+ * nesting keeps its own copy of its bytes, so a deep document needs a budget of a few times its
+ * encoded size to be fully reused.  The outermost value is never cached, as it is the node an
+ * edit always replaces.  Only nodes inside a Stuff are cached: plain java.util collections passed
+ * in directly might be modified later.
+ *
+ * The output is the same as writing the Stuff with Jackson.  One writer can be shared by many
+ * threads.
+ */
+public final class StuffWriter {
+
+    /**
+     * Subtrees smaller than this are cheaper to encode again than to look up.
+     */
+    private static final int MIN_CACHED = 64;
+
+    /**
+     * One bit per identity hash bucket, set when a node in that bucket is stored, so that the
+     * many nodes never stored (mostly those under MIN_CACHED) are encoded without taking the
+     * lock.  Bits are only cleared by clear(), so a set bit just means "worth looking up".
+     */
+    private static final int STORED_BITS = 1 << 18;
+    private final AtomicLongArray stored = new AtomicLongArray(STORED_BITS / 64);
+
+    private final long maxBytes;
+    private final LinkedHashMap<NodeKey, byte[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private long bytes = 0;
+
+    private final LongAdder encoded = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+
+    public StuffWriter(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must not be negative: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    public byte[] write(Object value) throws IOException {
+        return encode(value).toByteArray();
+    }
+
+    public void write(Object value, OutputStream stream) throws IOException {
+        Buffer out = encode(value);
+        stream.write(out.bytes, 0, out.length);
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+        bytes = 0;
+        for (int i = 0; i < stored.length(); i++) {
+            stored.set(i, 0);
+        }
+    }
+
+    /**
+     * The number of subtrees whose bytes are cached.
+     */
+    public synchronized int size() {
+        expunge();
+        return cache.size();
+    }
+
+    public synchronized long getCachedBytes() {
+        expunge();
+        return bytes;
+    }
+
+    /**
+     * The number of bytes written by encoding values.
+     */
+    public long getEncodedBytes() {
+        return encoded.sum();
+    }
+
+    /**
+     * The number of bytes written by copying a cached subtree.
+     */
+    public long getReusedBytes() {
+        return reused.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StuffWriter(size=%d, bytes=%d/%d, encoded=%d, reused=%d)",
+                size(), getCachedBytes(), maxBytes, getEncodedBytes(), getReusedBytes());
+    }
+
+    private Buffer encode(Object value) throws IOException {
+        Buffer out = new Buffer();
+        encode(value, out, false, true);
+        encoded.add(out.length - out.reused);
+        reused.add(out.reused);
+        return out;
+    }
+
+    private void encode(Object value, Buffer out, boolean owned, boolean top) throws IOException {
+        boolean map = Stuff.isMapLike(value);
+        if (!map && !Stuff.isListLike(value)) {
+            writeLeaf(value, out);
+            return;
+        }
+
+        owned |= value instanceof Stuff;
+        boolean cacheable = owned && !top;
+        if (cacheable && mayBeStored(value)) {
+            byte[] cached = lookup(value);
+            if (cached != null) {
+                out.write(cached, 0, cached.length);
+                out.reused += cached.length;
+                return;
+            }
+        }
+
+        int start = out.length;
+        if (map) {
+            out.write('{');
+            if (value instanceof Stuff) {
+                for (Entry e : (Stuff) value) {
+                    writeEntry(e.getKey(), e.getValue(), out, owned);
+                }
+            } else {
+                for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                    writeEntry(e.getKey(), e.getValue(), out, owned);
+                }
+            }
+            out.write('}');
+        } else {
+            out.write('[');
+            int size = Stuff.sizeOf(value);
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                encode(Stuff.getRawFrom(value, i, null), out, owned, false);
+            }
+            out.write(']');
+        }
+
+        if (cacheable && out.length - start >= MIN_CACHED) {
+            store(value, Arrays.copyOfRange(out.bytes, start, out.length));
+        }
+    }
+
+    private void writeEntry(Object key, Object value, Buffer out, boolean owned) throws IOException {
+        if (out.bytes[out.length - 1] != '{') {
+            out.write(',');
+        }
+        writeString(String.valueOf(key), out);
+        out.write(':');
+        encode(value, out, owned, false);
+    }
+
+    private static void writeLeaf(Object value, Buffer out) throws IOException {
+        if (value == null) {
+            out.writeAscii("null");
+        } else if (value instanceof String) {
+            writeString((String) value, out);
+        } else if (value instanceof Boolean || value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte || value instanceof BigInteger
+                || value instanceof BigDecimal || isFinite(value)) {
+            out.writeAscii(value.toString());
+        } else {
+            byte[] json = Json.MAPPER.writeValueAsBytes(value);
+            out.write(json, 0, json.length);
+        }
+    }
+
+    /**
+     * Whether a value is a finite Double or Float.  Jackson quotes NaN and the infinities, so
+     * those are left to it.
+     */
+    private static boolean isFinite(Object value) {
+        return (value instanceof Double || value instanceof Float)
+                && !Double.isNaN(((Number) value).doubleValue()) && !Double.isInfinite(((Number) value).doubleValue());
+    }
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private static void writeString(String s, Buffer out) {
+        out.write('"');
+        int plain = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            out.writeUtf8(s, plain, i);
+            out.write('\\');
+            switch (c) {
+                case '"': out.write('"'); break;
+                case '\\': out.write('\\'); break;
+                case '\n': out.write('n'); break;
+                case '\r': out.write('r'); break;
+                case '\t': out.write('t'); break;
+                case '\b': out.write('b'); break;
+                case '\f': out.write('f'); break;
+                default:
+                    out.writeAscii("u00");
+                    out.write(HEX[c >> 4]);
+                    out.write(HEX[c & 0xF]);
+            }
+            plain = i + 1;
+        }
+        out.writeUtf8(s, plain, s.length());
+        out.write('"');
+    }
+
+    private boolean mayBeStored(Object node) {
+        int bit = System.identityHashCode(node) & (STORED_BITS - 1);
+        return (stored.get(bit >>> 6) & (1L << bit)) != 0;
+    }
+
+    private void markStored(Object node) {
+        int bit = System.identityHashCode(node) & (STORED_BITS - 1);
+        long mask = 1L << bit;
+        for (long word; ((word = stored.get(bit >>> 6)) & mask) == 0;) {
+            if (stored.compareAndSet(bit >>> 6, word, word | mask)) {
+                return;
+            }
+        }
+    }
+
+    private synchronized byte[] lookup(Object node) {
+        return cache.get(new NodeKey(node, null));
+    }
+
+    private synchronized void store(Object node, byte[] encoded) {
+        expunge();
+        if (encoded.length > maxBytes) {
+            return;
+        }
+        markStored(node);
+        byte[] old = cache.put(new NodeKey(node, collected), encoded);
+        bytes += encoded.length - (old == null ? 0 : old.length);
+
+        for (Iterator<byte[]> it = cache.values().iterator(); bytes > maxBytes && it.hasNext();) {
+            bytes -= it.next().length;
+            it.remove();
+        }
+    }
+
+    private void expunge() {
+        for (Object ref; (ref = collected.poll()) != null;) {
+            byte[] removed = cache.remove(ref);
+            if (removed != null) {
+                bytes -= removed.length;
+            }
+        }
+    }
+
+    /**
+     * Weak reference that compares by the identity of its referent.
+     */
+    private static final class NodeKey extends WeakReference<Object> {
+        private final int hash;
+
+        NodeKey(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (o instanceof NodeKey) {
+                Object a = get();
+                return a != null && a == ((NodeKey) o).get();
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A growable byte array that subtrees can be copied out of, counting the bytes that were
+     * copied in from the cache.
+     */
+    private static final class Buffer {
+        byte[] bytes = new byte[256];
+        int length = 0;
+        int reused = 0;
+
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+
+        void write(int b) {
+            ensure(1);
+            bytes[length++] = (byte) b;
+        }
+
+        void write(byte[] b, int offset, int count) {
+            ensure(count);
+            System.arraycopy(b, offset, bytes, length, count);
+            length += count;
+        }
+
+        void writeAscii(String s) {
+            ensure(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                bytes[length++] = (byte) s.charAt(i);
+            }
+        }
+
+        void writeUtf8(String s, int from, int to) {
+            if (from < to) {
+                byte[] utf8 = s.substring(from, to).getBytes(StandardCharsets.UTF_8);
+                write(utf8, 0, utf8.length);
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package unitard;
+
+import java.util.*;
+
+/**
+ * A Schema compiled into a tree of flat nodes, ready to check Stuff.
+ *
+ * Validation visits each node of the document described by the schema exactly once, and
+ * collects every Missing, Null and WrongType result along with its path.  Paths are only
+ * built for failures, so validating a well-formed document allocates nothing.
+ */
+public final class Validator {
+
+    private static final Object MISSING = new Object();
+
+    private static final int MISSING_VALUE = 0, NULL_VALUE = 1, WRONG_TYPE = 2;
+
+    private final Node root;
+
+    Validator(Schema schema) {
+        this.root = new Node(schema);
+    }
+
+    /**
+     * Returns every failure found in the Stuff; the list is empty if it is valid.
+     */
+    public List<Hopefully<Object>> validate(Stuff stuff) {
+        List<Failure> failures = check(root, stuff, null);
+        if (failures == null) {
+            return Collections.emptyList();
+        }
+
+        List<Hopefully<Object>> result = new ArrayList<>(failures.size());
+        for (Failure f : failures) {
+            result.add(f.toHopefully());
+        }
+        return result;
+    }
+
+    public boolean isValid(Stuff stuff) {
+        return check(root, stuff, null) == null;
+    }
+
+    private static List<Failure> check(Node node, Object value, List<Failure> failures) {
+        if (value == null) {
+            return node.nullable ? failures : fail(failures, new Failure(NULL_VALUE, null, null));
+        }
+        if (!node.hasType(value)) {
+            return fail(failures, new Failure(WRONG_TYPE, value, node.type));
+        }
+
+        for (int i = 0; i < node.keys.length; i++) {
+            Object child = Stuff.getRawFrom(value, node.keys[i], MISSING);
+            if (child == MISSING) {
+                if (node.required[i]) {
+                    failures = fail(failures, new Failure(MISSING_VALUE, null, null));
+                    failures.get(failures.size() - 1).reversedPath.add(node.keys[i]);
+                }
+            } else {
+                int mark = failures == null ? 0 : failures.size();
+                failures = check(node.children[i], child, failures);
+                if (failures != null && failures.size() > mark) {
+                    prependKey(failures, mark, node.keys[i]);
+                }
+            }
+        }
+
+        if (node.elements != null && Stuff.isListLike(value)) {
+            int size = Stuff.sizeOf(value);
+            for (int i = 0; i < size; i++) {
+                int mark = failures == null ? 0 : failures.size();
+                failures = check(node.elements, Stuff.getRawFrom(value, i, null), failures);
+                // Only boxed when there is a failure to give a path to
+                if (failures != null && failures.size() > mark) {
+                    prependKey(failures, mark, i);
+                }
+            }
+        }
+        return failures;
+    }
+
+    private static List<Failure> fail(List<Failure> failures, Failure f) {
+        if (failures == null) {
+            failures = new ArrayList<>();
+        }
+        failures.add(f);
+        return failures;
+    }
+
+    private static void prependKey(List<Failure> failures, int from, Object key) {
+        for (int i = from; i < failures.size(); i++) {
+            failures.get(i).reversedPath.add(key);
+        }
+    }
+
+    private static final class Node {
+        final Class<?> type;
+        final boolean nullable;
+        final Object[] keys;
+        final boolean[] required;
+        final Node[] children;
+        final Node elements;
+
+        Node(Schema schema) {
+            this.type = schema.type;
+            this.nullable = schema.nullable;
+            this.elements = schema.elements == null ? null : new Node(schema.elements);
+
+            int n = schema.fields.size();
+            this.keys = new Object[n];
+            this.required = new boolean[n];
+            this.children = new Node[n];
+
+            int i = 0;
+            for (Map.Entry<Object, Schema.Field> e : schema.fields.entrySet()) {
+                keys[i] = e.getKey();
+                required[i] = e.getValue().required;
+                children[i] = new Node(e.getValue().schema);
+                i++;
+            }
+        }
+
+        boolean hasType(Object value) {
+            if (type == null || type.isInstance(value)) {
+                return true;
+            } else if (type == Map.class) {
+                return Stuff.isMapLike(value);
+            } else if (type == List.class) {
+                return Stuff.isListLike(value);
+            }
+            return false;
+        }
+    }
+
+    private static final class Failure {
+        final int kind;
+        final Object found;
+        final Class<?> expected;
+        final List<Object> reversedPath = new ArrayList<>();
+
+        Failure(int kind, Object found, Class<?> expected) {
+            this.kind = kind;
+            this.found = found;
+            this.expected = expected;
+        }
+
+        Hopefully<Object> toHopefully() {
+            List<Object> keys = new ArrayList<>(reversedPath);
+            Collections.reverse(keys);
+            Path path = new Path(keys);
+
+            switch (kind) {
+                case NULL_VALUE:
+                    return Hopefully.nullValue().withPath(path);
+                case WRONG_TYPE:
+                    return Hopefully.wrongType(found.getClass(), expected).withPath(path);
+                default:
+                    return Hopefully.missing().withPath(path);
+            }
+        }
+    }
+}
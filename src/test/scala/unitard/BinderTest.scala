@@ -0,0 +1,79 @@
+package unitard
+
+import org.specs2.mutable.Specification
+import JavaInterop._
+
+class BoundItem {
+  var name: String = _
+  var weight: Double = 0
+}
+
+class BoundResult {
+  var channel: String = _
+  var price: Int = 0
+  var items: JList[BoundItem] = _
+}
+
+class BoundSettings {
+  var limits: JMap[Object, Object] = _
+}
+
+class BinderTest extends Specification {
+
+  val stuff = Stuff.fromMap(JMap(
+    "channel" -> "buy",
+    "price" -> JInt(3),
+    "items" -> JList(JMap("name" -> "x", "weight" -> new JDouble(1.5)))))
+
+  "A binder" should {
+    "fill every field" in {
+      val result = Binder.of(classOf[BoundResult]).read(stuff).unsafeGet()
+
+      result.channel === "buy"
+      result.price === 3
+      result.items.get(0).name === "x"
+      result.items.get(0).weight === 1.5
+    }
+
+    "write back what it read" in {
+      val binder = Binder.of(classOf[BoundResult])
+      val written = binder.write(binder.read(stuff).unsafeGet())
+
+      written.get("channel") === stuff.get("channel")
+      written.get("items", JInt(0), "name") === stuff.get("items", JInt(0), "name")
+      binder.read(written).unsafeGet().price === 3
+    }
+
+    "report the path of a wrongly typed field" in {
+      val broken = stuff.at("items", JInt(0)).put("name", JInt(7)).done()
+
+      Binder.of(classOf[BoundResult]).read(broken) ===
+        Hopefully.wrongType[BoundResult](classOf[JInt], classOf[String])
+          .withPath(Path.of("items", JInt(0), "name"))
+    }
+
+    "report a missing field" in {
+      Binder.of(classOf[BoundResult]).read(stuff.remove("price")) ===
+        Hopefully.missing[BoundResult]().withPath(Path.of("price"))
+    }
+
+    "refuse a number that does not fit the field exactly" in {
+      val binder = Binder.of(classOf[BoundResult])
+      binder.read(stuff.put("price", java.lang.Long.valueOf(1L << 40))).isWrongType must beTrue
+      binder.read(stuff.put("price", new JDouble(3.7))).isWrongType must beTrue
+      binder.read(stuff.put("price", new JDouble(4.0))).unsafeGet().price === 4
+    }
+
+    "bind a map field from a Stuff map" in {
+      val settings = Binder.of(classOf[BoundSettings]).read(Stuff.mapOf("limits", Stuff.mapOf("a", JInt(1)))).unsafeGet()
+      settings.limits.get("a") === 1
+    }
+
+    "report a map field with a null key as the wrong type" in {
+      val limits = new java.util.HashMap[Object, Object]
+      limits.put(null, JInt(1))
+      Binder.of(classOf[BoundSettings]).read(Stuff.mapOf("limits", limits)) ===
+        Hopefully.wrongType[BoundSettings](classOf[Void], classOf[Object]).withPath(Path.of("limits"))
+    }
+  }
+}
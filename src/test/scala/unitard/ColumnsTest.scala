@@ -0,0 +1,95 @@
+package unitard
+
+import org.specs2.mutable.Specification
+import JavaInterop._
+
+class ColumnsTest extends Specification {
+
+  val records = Stuff.listOf(
+    Stuff.mapOf("price", JInt(3), "channel", "buy", "detail", Stuff.mapOf("fee", Double.box(0.5))),
+    Stuff.mapOf("price", JInt(1), "channel", null),
+    Stuff.mapOf("price", JInt(2), "channel", "buy", "detail", Stuff.mapOf("fee", Double.box(1.5))),
+    Stuff.mapOf("channel", "sell"))
+
+  val doc = Stuff.mapOf("trades", records)
+  val price = Path.of("price")
+  val channel = Path.of("channel")
+  val fee = Path.of("detail", "fee")
+
+  val columns = doc.project(Path.of("trades"), price, channel, fee).unsafeGet()
+
+  "A columnar projection" should {
+    "read each value as it would be read from the list" in {
+      columns.size === 4
+      columns.get(0, fee) === Hopefully.notNull(0.5).withPath(Path.of(JInt(0), "detail", "fee"))
+      columns.get(1, channel) === Hopefully.nullValue[Object]().withPath(Path.of(JInt(1), "channel"))
+      columns.get(3, price) === Hopefully.missing[Object]().withPath(Path.of(JInt(3), "price"))
+    }
+
+    "aggregate numeric fields, skipping absent values" in {
+      columns.sum(price).unsafeGet() === 6L
+      columns.min(price).unsafeGet() === 1L
+      columns.max(fee).unsafeGet() === 1.5
+      columns.count(price).unsafeGet() === 3
+      columns.count(channel).unsafeGet() === 3
+    }
+
+    "refuse to add up strings" in {
+      columns.sum(channel).isWrongType should beTrue
+    }
+
+    "filter rows by a dictionary-encoded string" in {
+      val buys = columns.filterStrings(channel, "buy".equals(_)).unsafeGet()
+      buys.size === 2
+      buys.sum(price).unsafeGet() === 5L
+    }
+
+    "filter rows by a number" in {
+      columns.filterDoubles(price, _ > 1.5).unsafeGet().toStuff() ===
+        Stuff.listOf(records.get(JInt(0)).unsafeGet(), records.get(JInt(2)).unsafeGet())
+    }
+
+    "turn back into the original rows" in {
+      columns.toStuff() === records
+    }
+
+    "keep integral values as they were when mixed with doubles" in {
+      val mixed = Stuff.listOf(Stuff.mapOf("n", JInt(3)), Stuff.mapOf("n", Double.box(2.5)))
+      val projected = mixed.project(Path.of(), Path.of("n")).unsafeGet()
+      projected.toStuff() === mixed
+      projected.sum(Path.of("n")).unsafeGet() === 5.5
+    }
+
+    "keep longs that a double cannot hold exactly" in {
+      val big = Stuff.listOf(Stuff.mapOf("n", Long.box((1L << 60) + 1)), Stuff.mapOf("n", Double.box(0.5)))
+      big.project(Path.of(), Path.of("n")).unsafeGet().toStuff() === big
+    }
+
+    "keep Long.MIN_VALUE among doubles as it was" in {
+      val min = Stuff.listOf(Stuff.mapOf("n", Long.box(Long.MinValue)), Stuff.mapOf("n", Double.box(0.5)))
+      min.project(Path.of(), Path.of("n")).unsafeGet().toStuff() === min
+    }
+
+    "add up longs exactly when a running total overflows" in {
+      val big = Stuff.listOf(Seq(Long.MaxValue, Long.MaxValue, -Long.MaxValue).map(n => Stuff.mapOf("n", Long.box(n))): _*)
+      big.project(Path.of(), Path.of("n")).unsafeGet().sum(Path.of("n")).unsafeGet() === Long.MaxValue
+    }
+
+    "find nothing at a field that was not projected" in {
+      val other = Path.of("other")
+      columns.sum(other).isMissing should beTrue
+      columns.count(other).isMissing should beTrue
+      columns.filter(other, new java.util.function.Predicate[Object] { def test(o: Object) = true }).isMissing should beTrue
+    }
+
+    "put list elements back into lists" in {
+      val lists = Stuff.listOf(Stuff.mapOf("tags", Stuff.listOf("a", "b")))
+      lists.project(Path.of(), Path.of("tags", JInt(0)), Path.of("tags", JInt(1))).unsafeGet().toStuff() === lists
+    }
+
+    "report a path that is not a list" in {
+      doc.project(Path.of("trades", JInt(0), "price"), price) ===
+        Hopefully.wrongType[Columns](classOf[JInt], classOf[java.util.List[_]]).withPath(Path.of("trades", JInt(0), "price"))
+    }
+  }
+}
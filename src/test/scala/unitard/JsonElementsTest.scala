@@ -0,0 +1,43 @@
+package unitard
+
+import java.io.ByteArrayInputStream
+
+import org.specs2.mutable.Specification
+import JavaInterop._
+
+import scala.collection.JavaConverters._
+
+class JsonElementsTest extends Specification {
+
+  def input(json: String) = new ByteArrayInputStream(json.getBytes("UTF-8"))
+
+  val json = """{"skipped": {"deep": [1, 2, {"a": []}]}, "tieredResults": [{"results": [{"channel": "buy"}, null]}]}"""
+
+  "Streaming elements" should {
+    "emit each element of the array at the path, with its path" in {
+      val elements = Stuff.streamElements(input(json), Path.of("tieredResults", JInt(0), "results"))
+        .iterator().asScala.toList
+
+      elements === List(
+        Hopefully.notNull(Stuff.mapOf("channel", "buy")).withPath(Path.of("tieredResults", JInt(0), "results", JInt(0))),
+        Hopefully.nullValue[Stuff]().withPath(Path.of("tieredResults", JInt(0), "results", JInt(1))))
+    }
+
+    "be empty when there is no array at the path" in {
+      Stuff.streamElements(input(json), Path.of("skipped")).count() === 0
+    }
+
+    "emit each value of newline-delimited JSON" in {
+      Stuff.streamNdjson(input("{\"a\": 1}\n{\"a\": 2}\n")).count() === 2
+    }
+
+    "rethrow a consumer's exception even once later elements are done" in {
+      val ndjson = (1 to 200).map(i => "{\"a\": " + i + "}").mkString("\n")
+      val failOnFirst = new java.util.function.Consumer[Hopefully[Stuff]] {
+        def accept(e: Hopefully[Stuff]) =
+          if (e.unsafeGet().get("a").unsafeGet() == JInt(1)) throw new IllegalArgumentException("first")
+      }
+      Stuff.forEachParallel(Stuff.streamNdjson(input(ndjson)), 2, failOnFirst) must throwA[IllegalArgumentException]
+    }
+  }
+}
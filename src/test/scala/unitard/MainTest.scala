@@ -0,0 +1,46 @@
+package unitard
+
+import java.io.{ByteArrayOutputStream, File, PrintStream}
+import java.nio.file.Files
+
+import org.specs2.mutable.Specification
+import JavaInterop._
+
+class MainTest extends Specification {
+
+  def run(input: String, args: String*): (String, String) = {
+    val file = File.createTempFile("unitard", ".ndjson")
+    file.deleteOnExit()
+    Files.write(file.toPath, input.getBytes("UTF-8"))
+
+    val main = new Main
+    main.parseArgs((args :+ file.getPath).toArray)
+    val out = new ByteArrayOutputStream
+    val report = new ByteArrayOutputStream
+    main.run(out, new PrintStream(report))
+    (out.toString("UTF-8"), report.toString("UTF-8"))
+  }
+
+  val input = "{\"channel\": \"buy\", \"price\": 3}\n{\"channel\": \"sell\"}\n{\"channel\": \"buy\", \"price\": \"x\"}\n"
+
+  "The command line tool" should {
+    "parse paths as they are printed" in {
+      Main.parsePath("tieredResults[0].results") === Path.of("tieredResults", JInt(0), "results")
+    }
+
+    "filter, edit and extract in input order" in {
+      run(input, "--where", "channel=buy", "--set", "seen=true", "--get", "seen", "--get", "price")._1 ===
+        "{\"seen\":true,\"price\":3}\n{\"seen\":true,\"price\":\"x\"}\n"
+    }
+
+    "skip a line that is not valid JSON and report it" in {
+      val (out, report) = run("{\"price\": 1}\n{\"price\":\n{\"price\": 2}\n", "--get", "price", "--unordered")
+      out.split("\n").sorted.toList === List("1", "2")
+      report must contain("1 documents were not valid JSON")
+    }
+
+    "count missing values per path" in {
+      run(input, "--get", "price", "--threads", "2")._2 must contain("price: 1 missing, 0 wrong type")
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package unitard
+
+import org.specs2.mutable.Specification
+import JavaInterop._
+
+class MemoryStatsTest extends Specification {
+
+  val shared = Stuff.listOf("a long string that is shared", "another long string")
+  val doc = Stuff.mapOf(
+    "left", Stuff.mapOf("shared", shared, "id", JInt(1)),
+    "right", Stuff.mapOf("shared", shared, "id", JInt(2)),
+    "deep", Stuff.listOf(Stuff.listOf(Stuff.listOf("bottom"))))
+
+  "Memory stats" should {
+    "count a shared subtree once" in {
+      val stats = doc.memoryStats()
+      val separately = List("left", "right", "deep").map(k => doc.get(k).asStuff().unsafeGet().memoryStats().getRetainedBytes).sum
+
+      stats.getCountsByType.get("SmallListStuff") === 4L
+      stats.getRetainedBytes must be_<(stats.getShallowBytes + separately)
+    }
+
+    "report the depth of the deepest value" in {
+      doc.memoryStats().getMaxDepth === 4
+    }
+
+    "list the largest subtrees, largest first" in {
+      val largest = doc.memoryStats().getLargestSubtrees
+      largest.values.toArray.toList === largest.values.toArray.toList.sortBy(-_.asInstanceOf[Long])
+      largest.containsKey(Path.of("left", "shared")) should beTrue
+    }
+
+    "report what is shared with a previous version" in {
+      val next = doc.put("extra", "x")
+      val stats = next.memoryStats(doc, false)
+      stats.getSharedBytes === doc.memoryStats().getRetainedBytes - doc.memoryStats().getShallowBytes
+    }
+
+    "give the same totals when walked in parallel" in {
+      val next = doc.put("extra", "x")
+      next.memoryStats(doc, true).getRetainedBytes === next.memoryStats(doc, false).getRetainedBytes
+      next.memoryStats(doc, true).getSharedBytes === next.memoryStats(doc, false).getSharedBytes
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package unitard
+
+import org.scalacheck.{Gen, Prop}
+import org.specs2.ScalaCheck
+import org.specs2.mutable.Specification
+import JavaInterop._
+
+import scala.collection.JavaConverters._
+
+class PathSetTest extends Specification with ScalaCheck {
+  import Generators._
+
+  def singleGet(stuff: Stuff, path: Path): Hopefully[Object] = {
+    val keys = path.getElements.asScala
+    stuff.get(keys.head, keys.tail: _*)
+  }
+
+  val genNonEmptyPath: Gen[Path] =
+    Gen.nonEmptyListOf(genPathKey).map(lst => Path.of(lst: _*))
+
+  "A path set" should {
+    "give the same results as getting each path on its own" in {
+      Prop.forAll(genStuff, Gen.listOf(genNonEmptyPath)) {
+        (stuff, paths) =>
+          PathSet.of(paths.asJava).get(stuff).asScala.toList === paths.map(p => singleGet(stuff, p))
+      }
+    }
+
+    "find values below a shared prefix" in {
+      val stuff = Stuff.mapOf("a", Stuff.mapOf("b", JInt(1), "c", JInt(2)))
+      val results = stuff.getAll(JList(Path.of("a", "b"), Path.of("a", "c"), Path.of("a", "d")))
+
+      results.get(Path.of("a", "b")).unsafeGet() === 1
+      results.get(Path.of("a", "c")).unsafeGet() === 2
+      results.get(Path.of("a", "d")).isMissing should beTrue
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package unitard
+
+import org.scalacheck.Prop
+import org.specs2.ScalaCheck
+import org.specs2.mutable.Specification
+import JavaInterop._
+
+import scala.collection.JavaConverters._
+
+class SchemaTest extends Specification with ScalaCheck {
+  import Generators._
+
+  val stuff = Stuff.fromMap(JMap(
+    "tieredResults" -> JList(JMap(
+      "results" -> JList(
+        JMap("channel" -> "buy", "someNullThing" -> null),
+        JMap("channel" -> JInt(5)),
+        null)))))
+
+  val resultSchema = Schema.map()
+    .required("channel", Schema.of(classOf[String]))
+    .optional("someNullThing", Schema.any().nullable())
+
+  "A validator" should {
+    "accept a well-formed document" in {
+      val v = Schema.map()
+        .required(Path.of("tieredResults", JInt(0), "results", JInt(0)), resultSchema)
+        .compile()
+
+      v.validate(stuff).isEmpty should beTrue
+    }
+
+    "report every failure with its path" in {
+      val v = Schema.map()
+        .required(Path.of("tieredResults", JInt(0), "results"), Schema.listOf(resultSchema))
+        .required("wat", Schema.any())
+        .compile()
+
+      v.validate(stuff).asScala.toList === List(
+        Hopefully.notNull[Object](JInt(5)).as(classOf[String]).withPath(
+          Path.of("tieredResults", JInt(0), "results", JInt(1), "channel")),
+        Hopefully.nullValue[Object]().withPath(Path.of("tieredResults", JInt(0), "results", JInt(2))),
+        Hopefully.missing[Object]().withPath(Path.of("wat")))
+    }
+
+    "refuse two types for the same value" in {
+      Schema.map()
+        .required(Path.of("a", "b"), Schema.of(classOf[String]))
+        .required(Path.of("a", "b"), Schema.of(classOf[JInt])) must throwA[IllegalArgumentException]
+    }
+
+    "accept anything for an empty map schema" in {
+      Prop.forAll(genMapStuff) {
+        s => Schema.map().compile().isValid(s) should beTrue
+      }
+    }
+  }
+}
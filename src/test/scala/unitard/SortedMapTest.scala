@@ -0,0 +1,95 @@
+package unitard
+
+import java.util.Comparator
+
+import org.specs2.mutable.Specification
+import JavaInterop._
+
+import scala.collection.JavaConverters._
+
+class SortedMapTest extends Specification {
+
+  val order: Comparator[JInt] = Comparator.naturalOrder[JInt]()
+  val sorted = (1 to 20).foldLeft(Stuff.sortedMap(order))((s, i) => s.put(JInt(i * 10), "v" + i))
+
+  def keysOf(stuff: Stuff) = stuff.getKeys.asScala.toList
+
+  "A sorted map" should {
+    "iterate in key order whatever order keys were put in" in {
+      val shuffled = List(3, 1, 2).foldLeft(Stuff.sortedMap(order))((s, i) => s.put(JInt(i), "x"))
+      keysOf(shuffled) === List(JInt(1), JInt(2), JInt(3))
+    }
+
+    "equal a hash map with the same entries" in {
+      val plain = Stuff.fromMap(JMap(JInt(1) -> "a", JInt(2) -> "b"))
+      val tree = Stuff.fromMap(JMap(JInt(1) -> "a", JInt(2) -> "b"), order)
+      tree === plain
+      tree.hashCode === plain.hashCode
+    }
+
+    "slice a range, from inclusive to exclusive" in {
+      keysOf(sorted.range(JInt(30), JInt(60)).unsafeGet()) === List(JInt(30), JInt(40), JInt(50))
+      sorted.headMap(JInt(30)).unsafeGet().size === 2
+      sorted.tailMap(JInt(195)).unsafeGet().size === 1
+    }
+
+    "take the first and last entries of a slice" in {
+      val slice = sorted.range(JInt(50), JInt(150)).unsafeGet()
+      keysOf(slice.firstN(2).unsafeGet()) === List(JInt(50), JInt(60))
+      keysOf(slice.lastN(2).unsafeGet()) === List(JInt(130), JInt(140))
+      slice.lastN(100).unsafeGet() must beTheSameAs(slice)
+    }
+
+    "edit only within a slice" in {
+      val slice = sorted.range(JInt(50), JInt(150)).unsafeGet()
+      slice.put(JInt(55), "new").get(JInt(55)).unsafeGet() === "new"
+      slice.put(JInt(5), "outside") must beTheSameAs(slice)
+      slice.get(JInt(10)).isMissing must beTrue
+    }
+
+    "stay sorted when edited through a focus" in {
+      val doc = Stuff.mapOf("index", sorted)
+      val edited = doc.at("index").put(JInt(15), "v1.5").remove(JInt(200)).done()
+      val index = edited.get("index").asStuff().unsafeGet()
+      keysOf(index.firstN(3).unsafeGet()) === List(JInt(10), JInt(15), JInt(20))
+      index.size === 20
+    }
+
+    "treat keys it cannot compare as missing" in {
+      sorted.get("ten").isMissing must beTrue
+      sorted.put("ten", "x") must beTheSameAs(sorted)
+    }
+
+    "stay sorted when merged into" in {
+      val merged = sorted.merge(Stuff.mapOf(JInt(5), "v0.5"), MergePolicy.RIGHT_WINS)
+      keysOf(merged.firstN(2).unsafeGet()) === List(JInt(5), JInt(10))
+    }
+
+    "merge by putting only the changed entries into its tree" in {
+      val nested = sorted.put(JInt(30), Stuff.mapOf("a", JInt(1)))
+      val merged = nested.merge(Stuff.mapOf(JInt(10), "changed", JInt(30), Stuff.mapOf("a", JInt(1))), MergePolicy.RIGHT_WINS)
+      merged.get(JInt(10)).unsafeGet() === "changed"
+      merged.get(JInt(30)).asStuff().unsafeGet() must beTheSameAs(nested.get(JInt(30)).asStuff().unsafeGet())
+      keysOf(merged) === keysOf(nested)
+      nested.merge(Stuff.mapOf(JInt(20), "v2"), MergePolicy.RIGHT_WINS) must beTheSameAs(nested)
+    }
+
+    "stay sorted when interned, and not be replaced by an equal hash map" in {
+      val interner = new StuffInterner
+      val plain = interner.intern(Stuff.fromMap(JMap(JInt(1) -> "a", JInt(2) -> "b")))
+      val tree = interner.intern(Stuff.fromMap(JMap(JInt(1) -> "a", JInt(2) -> "b"), order))
+
+      tree must not(beTheSameAs(plain))
+      tree.firstN(1).isActualValue must beTrue
+    }
+
+    "count its tree once however many views share it" in {
+      val views = Stuff.listOf(sorted, sorted.range(JInt(50), JInt(150)).unsafeGet(), sorted.lastN(3).unsafeGet())
+      views.memoryStats().getRetainedBytes must beLessThan(Stuff.listOf(sorted).memoryStats().getRetainedBytes * 2)
+    }
+
+    "not be something an unsorted map can slice" in {
+      Stuff.mapOf("a", JInt(1)).range("a", "b").isWrongType must beTrue
+    }
+  }
+}
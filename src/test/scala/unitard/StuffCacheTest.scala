@@ -0,0 +1,104 @@
+package unitard
+
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.{CountDownLatch, Executors, TimeUnit}
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.specs2.mutable.Specification
+import JavaInterop._
+
+class StuffCacheTest extends Specification {
+
+  def loader(f: => Object): StuffCache.Loader = new StuffCache.Loader {
+    def load(): Object = f
+  }
+
+  "A Stuff cache" should {
+    "parse a file once, and again when it changes" in {
+      val file = File.createTempFile("unitard", ".json")
+      file.deleteOnExit()
+      Files.write(file.toPath, "{\"a\": 1}".getBytes("UTF-8"))
+      val cache = new StuffCache(1 << 20)
+
+      val first = cache.get(file).unsafeGet()
+      cache.get(file).unsafeGet() must beTheSameAs(first)
+
+      Files.write(file.toPath, "{\"a\": 22}".getBytes("UTF-8"))
+      cache.get(file).unsafeGet().get("a").unsafeGet() === 22
+      cache.getMisses === 2
+    }
+
+    "look up JSON by its content" in {
+      val cache = new StuffCache(1 << 20)
+      cache.get("[1, 2]".getBytes("UTF-8")).unsafeGet() must beTheSameAs(cache.get("[1, 2]".getBytes("UTF-8")).unsafeGet())
+      cache.getHits === 1
+    }
+
+    "not cache JSON that is not a document" in {
+      val cache = new StuffCache(1 << 20)
+      cache.get("3".getBytes("UTF-8")).isWrongType should beTrue
+      cache.get("3".getBytes("UTF-8")).isWrongType should beTrue
+      cache.size === 0
+      cache.getMisses === 2
+    }
+
+    "load a key once when many threads ask for it at the same time" in {
+      val cache = new StuffCache(1 << 20)
+      val loads = new AtomicInteger
+      val start = new CountDownLatch(1)
+      val pool = Executors.newFixedThreadPool(8)
+      (1 to 8).foreach(_ => pool.submit(new Runnable {
+        def run(): Unit = {
+          start.await()
+          cache.get("key", loader {
+            loads.incrementAndGet()
+            Thread.sleep(100)
+            JMap("x" -> JInt(1))
+          })
+        }
+      }))
+      start.countDown()
+      pool.shutdown()
+      pool.awaitTermination(10, TimeUnit.SECONDS)
+
+      loads.get === 1
+      cache.getHits === 7
+    }
+
+    "count threads that waited for a load that failed as misses" in {
+      val cache = new StuffCache(1 << 20)
+      val start = new CountDownLatch(1)
+      val pool = Executors.newFixedThreadPool(4)
+      (1 to 4).foreach(_ => pool.submit(new Runnable {
+        def run(): Unit = {
+          start.await()
+          cache.get("key", loader {
+            Thread.sleep(100)
+            throw new java.io.IOException("unreadable")
+          })
+        }
+      }))
+      start.countDown()
+      pool.shutdown()
+      pool.awaitTermination(10, TimeUnit.SECONDS)
+
+      cache.getHits === 0
+      cache.getMisses === 4
+    }
+
+    "evict the least recently used documents to stay within its size" in {
+      val (a, b, c) = (Stuff.listOf("a"), Stuff.listOf("b"), Stuff.listOf("c"))
+      def size(s: Stuff) = s.memoryStats().getRetainedBytes
+      val cache = new StuffCache(size(a) + size(b) + size(c) - 1)
+      cache.get("a", loader(a))
+      cache.get("b", loader(b))
+      cache.get("a", loader(a))
+      cache.get("c", loader(c))
+
+      cache.getEvictions === 1
+      cache.size === 2
+      cache.get("a", loader(Stuff.EMPTY_LIST)).unsafeGet() must beTheSameAs(a)
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package unitard
+
+import java.io.File
+
+import org.specs2.mutable.Specification
+import JavaInterop._
+
+class StuffHistoryTest extends Specification {
+
+  def tempFile = {
+    val f = File.createTempFile("stuff-history", ".log")
+    f.deleteOnExit()
+    f
+  }
+
+  val v0 = Stuff.mapOf("a", Stuff.mapOf("x", JInt(1), "y", JInt(2)), "b", "keep")
+
+  "A history" should {
+    "rebuild every committed version" in {
+      val history = StuffHistory.create(tempFile, v0, 2)
+      val v1 = v0.at("a").put("x", JInt(10)).done()
+      val v2 = v1.at("a").remove("y").done()
+      val v3 = v2.put("c", Stuff.listOf("new"))
+      history.commit(v1)
+      history.commit(v2)
+      history.commit(v3)
+
+      history.version(0).get("a", "x").unsafeGet() === 1
+      history.version(1).get("a", "x").unsafeGet() === 10
+      history.version(2).get("a", "y").isMissing should beTrue
+      history.version(3).get("c", JInt(0)).unsafeGet() === "new"
+      history.version(3).get("b").unsafeGet() === "keep"
+    }
+
+    "record only what changed" in {
+      val big = Stuff.fromMap(JMap((1 to 100).map(i => ("k" + i) -> JInt(i)): _*))
+      val history = StuffHistory.create(tempFile, big, 100)
+      val before = history.getLogSize
+      history.commit(big.put("k1", JInt(0)))
+
+      history.getLogSize - before must beLessThan(before)
+    }
+
+    "record only the elements added to or removed from a list" in {
+      val list = Stuff.fromList(JList((1 to 10000).map(i => Stuff.mapOf("i", JInt(i))): _*))
+      val history = StuffHistory.create(tempFile, Stuff.mapOf("records", list), 100)
+      val before = history.getLogSize
+      val appended = list.add(Stuff.mapOf("i", JInt(0)))
+      history.commit(Stuff.mapOf("records", appended))
+      history.commit(Stuff.mapOf("records", appended.remove(JInt(0)).insert(1, "x")))
+
+      history.getLogSize - before must beLessThan(before / 100)
+      history.version(1).get("records", JInt(10000), "i").unsafeGet() === 0
+      history.version(2).get("records", JInt(0), "i").unsafeGet() === 2
+      history.version(2).get("records", JInt(1)).unsafeGet() === "x"
+      history.version(2).get("records").asStuff().unsafeGet().size === 10001
+    }
+
+    "refuse map keys that would not come back as they were" in {
+      StuffHistory.create(tempFile, Stuff.mapOf(JInt(1), "a"), 100) must throwA[IllegalArgumentException]
+
+      val history = StuffHistory.create(tempFile, v0, 100)
+      history.commit(v0.at("a").put(JInt(1), "b").done()) must throwA[IllegalArgumentException]
+      history.latestVersion === 0
+    }
+
+    "diff edits inside raw nested maps" in {
+      val nested = JMap("inner" -> JMap("x" -> JInt(1), "y" -> JInt(2)), "other" -> JMap("z" -> JInt(3)))
+      val doc = Stuff.fromMap(nested)
+      val history = StuffHistory.create(tempFile, doc, 100)
+      history.commit(doc.at("inner").put("x", JInt(10)).done())
+
+      history.version(1).get("inner", "x").unsafeGet() === 10
+      history.version(1).get("other", "z").unsafeGet() === 3
+    }
+
+    "discard a corrupt record at the end when reopened" in {
+      val file = tempFile
+      val history = StuffHistory.create(file, v0, 100)
+      history.commit(v0.put("b", "one"))
+      val size = history.getLogSize
+      history.commit(v0.put("b", "two"))
+      history.close()
+
+      val log = new java.io.RandomAccessFile(file, "rw")
+      log.seek(log.length - 2)
+      log.write('X')
+      log.seek(log.length)
+      log.writeInt(-7)
+      log.close()
+
+      val reopened = StuffHistory.open(file, 100)
+      reopened.latestVersion === 1
+      reopened.getLogSize === size
+      reopened.latest().get("b").unsafeGet() === "one"
+    }
+
+    "be reopened from its file" in {
+      val file = tempFile
+      val history = StuffHistory.create(file, v0, 2)
+      history.commit(v0.put("b", "changed"))
+      history.close()
+
+      val reopened = StuffHistory.open(file, 2)
+      reopened.latestVersion === 1
+      reopened.latest().get("b").unsafeGet() === "changed"
+    }
+  }
+}
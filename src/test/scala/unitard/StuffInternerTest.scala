@@ -0,0 +1,59 @@
+package unitard
+
+import org.scalacheck.Prop
+import org.specs2.ScalaCheck
+import org.specs2.mutable.Specification
+import JavaInterop._
+
+class StuffInternerTest extends Specification with ScalaCheck {
+  import Generators._
+
+  def doc = JMap("results" -> JList(JMap("channel" -> new String("buy"), "meta" -> JMap("k" -> JList(JInt(1))))))
+
+  "An interner" should {
+    "store equal subtrees once" in {
+      val interner = new StuffInterner
+      val a = interner.fromMap(doc)
+      val b = interner.fromMap(doc)
+
+      a must beTheSameAs(b)
+      a.get("results", JInt(0), "meta").unsafeGet() must beTheSameAs(b.get("results", JInt(0), "meta").unsafeGet())
+    }
+
+    "share equal leaves between different documents" in {
+      val interner = new StuffInterner
+      val a = interner.fromMap(JMap("x" -> new String("buy")))
+      val b = interner.fromMap(JMap("y" -> new String("buy")))
+
+      a.get("x").unsafeGet() must beTheSameAs(b.get("y").unsafeGet())
+    }
+
+    "tell different interned documents apart without reading them" in {
+      val interner = new StuffInterner
+      val a = interner.fromMap(JMap("x" -> JInt(1)))
+      val b = interner.fromMap(JMap("x" -> JInt(2)))
+
+      interner.equal(a, b) should beFalse
+      interner.equal(a, interner.fromMap(JMap("x" -> JInt(1)))) should beTrue
+      interner.equal(a, new StuffInterner().fromMap(JMap("x" -> JInt(1)))) should beTrue
+      interner.equal(a, interner.intern(Stuff.fromMap(JMap("x" -> JInt(1)), java.util.Comparator.naturalOrder[String]()))) should beTrue
+    }
+
+    "report the duplicates it removed" in {
+      val interner = new StuffInterner
+      interner.fromMap(doc)
+      interner.fromMap(doc)
+
+      interner.getDeduplicated must beGreaterThan(0L)
+      interner.getDedupRatio must beBetween(0.0, 1.0)
+    }
+
+    "preserve the keys of what it interns" in {
+      Prop.forAll(genMapStuff, genJavaPrimitive) {
+        (stuff, k) =>
+          val interned = new StuffInterner().intern(stuff)
+          interned.size == stuff.size && interned.get(k).isMissing == stuff.get(k).isMissing
+      }
+    }
+  }
+}
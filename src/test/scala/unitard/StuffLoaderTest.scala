@@ -0,0 +1,88 @@
+package unitard
+
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.function.Consumer
+
+import org.specs2.mutable.Specification
+import JavaInterop._
+
+import scala.collection.JavaConverters._
+
+class StuffLoaderTest extends Specification {
+
+  def jsonFile(contents: String): File = {
+    val file = File.createTempFile("unitard", ".json")
+    file.deleteOnExit()
+    Files.write(file.toPath, contents.getBytes("UTF-8"))
+    file
+  }
+
+  val good = (1 to 50).map(i => jsonFile("{\"id\": " + i + "}"))
+  val malformed = jsonFile("{\"id\": ")
+  val absent = new File(malformed.getPath + ".absent")
+  val number = jsonFile("42")
+  val all = (good :+ malformed :+ absent :+ number).asJava
+
+  "A Stuff loader" should {
+    "pass every file to the callback" in {
+      val loader = new StuffLoader(4, 2, 8)
+      val loaded = new ConcurrentLinkedQueue[StuffLoader.Loaded]
+      try loader.load(all, new Consumer[StuffLoader.Loaded] { def accept(l: StuffLoader.Loaded) = loaded.add(l) })
+      finally loader.close()
+
+      loaded.size === 53
+      loaded.asScala.filter(_.getStuff.isActualValue).map(_.getStuff.unsafeGet().get("id").unsafeGet()).toSet ===
+        (1 to 50).map(i => JInt(i): Object).toSet
+    }
+
+    "report each file that fails, without stopping the others" in {
+      val loader = new StuffLoader(4, 2, 8)
+      val results = try loader.stream(all).iterator().asScala.map(l => l.getFile -> l).toMap
+      finally loader.close()
+
+      results(malformed).getStuff.isMissing must beTrue
+      results(malformed).getError must beAnInstanceOf[java.io.IOException]
+      results(absent).getError must beAnInstanceOf[java.io.IOException]
+      results(number).getStuff.isWrongType must beTrue
+      results(good.head).getError must beNull
+      loader.getFailures === 2
+    }
+
+    "stop reading the files when a stream is closed early" in {
+      @volatile var feeder: Thread = null
+      val endless = new java.lang.Iterable[File] {
+        def iterator() = new java.util.Iterator[File] {
+          def hasNext() = { feeder = Thread.currentThread(); true }
+          def next() = good.head
+        }
+      }
+      val loader = new StuffLoader(1, 1, 2)
+      try {
+        val stream = loader.stream(endless)
+        stream.iterator().next()
+        stream.close()
+        feeder.isAlive must beFalse
+      } finally loader.close()
+    }
+
+    "deliver a file as failed when the loader was closed before it was parsed" in {
+      val loader = new StuffLoader(1, 1, 1)
+      loader.close()
+      val results = loader.stream(good.take(3).asJava).iterator().asScala.toList
+      results.forall(_.getError.isInstanceOf[java.io.IOException]) must beTrue
+      results.size === 3
+    }
+
+    "keep timings for sizing its pools" in {
+      val loader = new StuffLoader(2, 2, 4)
+      try loader.load(good.asJava, new Consumer[StuffLoader.Loaded] { def accept(l: StuffLoader.Loaded) = () })
+      finally loader.close()
+
+      loader.getFiles === 50
+      loader.getParseNanos(0.5) must beLessThanOrEqualTo(loader.getParseNanos(0.99))
+      loader.getFilesPerSecond must beGreaterThan(0.0)
+    }
+  }
+}
@@ -95,4 +95,135 @@ class StuffTest extends Specification with ScalaCheck {
     }
 
   }
+
+  "Merging" should {
+    "be a no-op with an empty map" in {
+      Prop.forAll(genMapStuff) {
+        stuff => stuff.merge(Stuff.EMPTY_MAP, MergePolicy.RIGHT_WINS) must beTheSameAs(stuff)
+      }
+    }
+
+    "reuse subtrees only one side has" in {
+      val shared = Stuff.mapOf("z", JInt(1))
+      val left = Stuff.mapOf("a", Stuff.mapOf("x", JInt(1)), "s", shared)
+      val merged = left.merge(Stuff.mapOf("a", Stuff.mapOf("x", JInt(2))), MergePolicy.RIGHT_WINS)
+
+      merged.get("a", "x").unsafeGet() === 2
+      merged.get("s").unsafeGet() must beTheSameAs(shared)
+    }
+
+    "let the left side win when asked" in {
+      val left = Stuff.mapOf("a", JInt(1))
+      left.merge(Stuff.mapOf("a", JInt(2)), MergePolicy.LEFT_WINS).get("a").unsafeGet() === 1
+    }
+
+    "concatenate lists when asked" in {
+      val left = Stuff.mapOf("l", Stuff.listOf(JInt(1)))
+      val right = Stuff.mapOf("l", Stuff.listOf(JInt(2)))
+      left.merge(right, MergePolicy.RIGHT_WINS.withLists(MergePolicy.Lists.CONCAT)).get("l").unsafeGet() ===
+        Stuff.listOf(JInt(1), JInt(2))
+    }
+  }
+
+  "A focus" should {
+    val stuff = Stuff.mapOf("a", Stuff.mapOf("aa", Stuff.listOf("x", "y", "z")))
+
+    "know its path" in {
+      stuff.at("a", "aa", JInt(1)).getPath === Path.of("a", "aa", JInt(1))
+    }
+
+    "move between siblings without losing edits" in {
+      val edited = stuff.at("a", "aa", JInt(0)).up().add("w").at(JInt(1)).right().right()
+
+      edited.get() === Hopefully.notNull[Object]("w").withPath(Path.of("a", "aa", JInt(3)))
+      edited.done().get("a", "aa", JInt(3)).unsafeGet() === "w"
+    }
+
+    "apply several edits before rebuilding" in {
+      stuff.at("a").put("b", JInt(1)).put("c", JInt(2)).done() ===
+        stuff.at("a").put("b", JInt(1)).done().at("a").put("c", JInt(2)).done()
+    }
+
+    "leave the stuff alone when nothing was edited" in {
+      stuff.at("a", "aa").asInstanceOf[EditFocus].done() must beTheSameAs(stuff)
+    }
+
+    "find nothing after a key that is not an index into a list" in {
+      Stuff.listOf("x", "y").at("foo").next().get().isMissing must beTrue
+    }
+
+    "move to the next key of a map with integer keys, not the next integer" in {
+      val byId = Stuff.sortedMap(java.util.Comparator.naturalOrder[JInt]()).put(JInt(10), "a").put(JInt(20), "b")
+      byId.at(JInt(10)).next().get().unsafeGet() === "b"
+      byId.at(JInt(10)).right().get().isMissing must beTrue
+      byId.at(JInt(20)).left().get().isMissing must beTrue
+    }
+  }
+
+  "Small and large nodes" should {
+    "be equal when they hold the same entries" in {
+      val keys = (0 until 10).map(i => "k" + i)
+      val grown = keys.foldLeft(Stuff.EMPTY_MAP)((s, k) => s.put(k, k))
+      val shrunk = keys.drop(8).foldLeft(grown)((s, k) => s.remove(k))
+      val small = keys.take(8).reverse.foldLeft(Stuff.EMPTY_MAP)((s, k) => s.put(k, k))
+
+      shrunk === small
+      shrunk.hashCode === small.hashCode
+    }
+
+    "keep every element as a list grows and shrinks" in {
+      val grown = (0 until 6).foldLeft(Stuff.EMPTY_LIST)((s, i) => s.add(JInt(i)))
+
+      grown.size === 6
+      grown.remove(JInt(5)).remove(JInt(4)) === Stuff.listOf(JInt(0), JInt(1), JInt(2), JInt(3))
+    }
+  }
+
+  "A list of records" should {
+    val records = Stuff.listOf(
+      Stuff.mapOf("price", JInt(3), "channel", "buy"),
+      Stuff.mapOf("price", JInt(1), "channel", "sell"),
+      Stuff.mapOf("price", JInt(2), "channel", "buy"))
+
+    "sort by a key" in {
+      records.sortBy(Path.of("price"), classOf[JInt]).unsafeGet() ===
+        Stuff.listOf(records.get(JInt(1)).unsafeGet(), records.get(JInt(2)).unsafeGet(), records.get(JInt(0)).unsafeGet())
+    }
+
+    "find the top k" in {
+      val top = records.topK(Path.of("price"), classOf[JInt], java.util.Comparator.reverseOrder[JInt](), 2).unsafeGet()
+      top.get(JInt(0), "price").unsafeGet() === 3
+      top.size === 2
+    }
+
+    "group by a key" in {
+      records.groupBy(Path.of("channel")).unsafeGet().get("buy").unsafeGet() ===
+        Stuff.listOf(records.get(JInt(0)).unsafeGet(), records.get(JInt(2)).unsafeGet())
+    }
+
+    "report a record with a missing key" in {
+      records.add(Stuff.EMPTY_MAP).sortBy(Path.of("price"), classOf[JInt]) ===
+        Hopefully.missing[Stuff]().withPath(Path.of(JInt(3), "price"))
+    }
+  }
+
+  "An adopted map" should {
+    "read nested raw collections in place" in {
+      val raw = new java.util.HashMap[Object, Object]()
+      (0 until 20).foreach(i => raw.put("k" + i, JInt(i)))
+      raw.put("nested", java.util.Arrays.asList("a", "b"))
+      val stuff = Stuff.adopt(raw)
+
+      stuff.get("k7").unsafeGet() === 7
+      stuff.get("nested", JInt(1)).unsafeGet() === "b"
+      stuff === Stuff.fromMap(raw)
+    }
+
+    "be edited without touching the original" in {
+      val raw = new java.util.HashMap[Object, Object]()
+      (0 until 20).foreach(i => raw.put("k" + i, JInt(i)))
+      Stuff.adopt(raw).put("k0", "changed").get("k0").unsafeGet() === "changed"
+      raw.get("k0") === 0
+    }
+  }
 }
@@ -0,0 +1,63 @@
+package unitard
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.{BiFunction, Function, Predicate}
+
+import org.specs2.mutable.Specification
+import JavaInterop._
+
+class StuffViewTest extends Specification {
+
+  val results = Stuff.listOf(
+    Stuff.mapOf("channel", "buy", "price", JInt(3)),
+    Stuff.mapOf("channel", "sell", "price", JInt(1)),
+    Stuff.mapOf("channel", "buy"),
+    Stuff.mapOf("channel", "buy", "price", JInt(7)))
+
+  val isBuy = new Predicate[Object] { def test(o: Object) = o == "buy" }
+
+  "A view" should {
+    "filter, extract and take in one pass" in {
+      results.view().filter(Path.of("channel"), isBuy).get(Path.of("price"), classOf[JInt]).take(1).toStuff() ===
+        Hopefully.notNull(Stuff.listOf(JInt(3)))
+    }
+
+    "report a missing value with its path" in {
+      results.view().filter(Path.of("channel"), isBuy).get(Path.of("price"), classOf[JInt]).toStuff() ===
+        Hopefully.missing[Stuff]().withPath(Path.of(JInt(2), "price"))
+    }
+
+    "fold the values that are there" in {
+      results.view().get(Path.of("price"), classOf[JInt]).dropFailures()
+        .fold(JInt(0), new BiFunction[JInt, JInt, JInt] { def apply(a: JInt, b: JInt) = JInt(a + b) }) ===
+        Hopefully.notNull(JInt(11))
+    }
+
+    "stop reading once take is satisfied" in {
+      val reads = new AtomicInteger
+      results.view().map[Object](new Function[Object, Object] { def apply(o: Object) = { reads.incrementAndGet(); o } })
+        .take(2).toStuff()
+      reads.get === 2
+    }
+
+    "skip with drop" in {
+      results.view().drop(3).toStuff() === Hopefully.notNull(Stuff.listOf(results.get(JInt(3)).unsafeGet()))
+    }
+
+    "flatten nested lists, keeping each element's full path" in {
+      val nested = Stuff.listOf(Stuff.listOf(JInt(1), JInt(2)), Stuff.listOf(JInt(3)))
+      val flat = nested.view().flatMap[Object](new Function[Object, StuffView[Object]] {
+        def apply(o: Object) = o.asInstanceOf[Stuff].view()
+      })
+      flat.toStuff() === Hopefully.notNull(Stuff.listOf(JInt(1), JInt(2), JInt(3)))
+      flat.stream().toArray.last === Hopefully.notNull(JInt(3)).withPath(Path.of(JInt(1), JInt(0)))
+    }
+
+    "zip two views up to the shorter one" in {
+      val zipped = results.view().zip[Object, Object](Stuff.listOf("a", "b").view(), new BiFunction[Object, Object, Object] {
+        def apply(a: Object, b: Object) = b
+      })
+      zipped.toStuff() === Hopefully.notNull(Stuff.listOf("a", "b"))
+    }
+  }
+}
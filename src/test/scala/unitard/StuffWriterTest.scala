@@ -0,0 +1,46 @@
+package unitard
+
+import org.specs2.mutable.Specification
+import JavaInterop._
+
+class StuffWriterTest extends Specification {
+
+  def record(i: Int) = Stuff.mapOf("id", JInt(i), "name", "a name long enough to be worth caching " + i)
+  val doc = Stuff.mapOf("rows", Stuff.listOf((0 until 100).map(record): _*), "meta", Stuff.mapOf("escaped", "\"quoted\"\n\u0001"))
+
+  "A writer" should {
+    "write the same JSON as Jackson" in {
+      new StuffWriter(1 << 20).write(doc).toSeq === Json.write(doc).toSeq
+    }
+
+    "write non-finite numbers as Jackson does" in {
+      val odd = Stuff.mapOf("nan", new JDouble(Double.NaN), "inf", new JDouble(Double.PositiveInfinity))
+      new StuffWriter(1 << 20).write(odd).toSeq === Json.write(odd).toSeq
+    }
+
+    "only encode what an edit rebuilt" in {
+      val writer = new StuffWriter(1 << 20)
+      writer.write(doc)
+      val before = writer.getEncodedBytes
+      val edited = doc.at("rows", JInt(7)).put("id", JInt(-7)).done()
+
+      writer.write(edited).toSeq === Json.write(edited).toSeq
+      writer.getEncodedBytes - before must beLessThan(writer.getReusedBytes / 10)
+    }
+
+    "keep within its budget" in {
+      val writer = new StuffWriter(500)
+      writer.write(doc)
+      writer.getCachedBytes must beLessThanOrEqualTo(500L)
+      writer.write(doc).toSeq === Json.write(doc).toSeq
+    }
+
+    "not cache plain collections, which might change" in {
+      val list = new java.util.ArrayList[Object]()
+      list.add(record(1).asMapOf(classOf[Object], classOf[Object]).unsafeGet())
+      val writer = new StuffWriter(1 << 20)
+      writer.write(list)
+      writer.size === 0
+    }
+  }
+}